@@ -0,0 +1,119 @@
+package com.newrelic;
+
+import android.content.Context;
+
+import com.newrelic.agent.android.NewRelic;
+import com.newrelic.agent.android.metric.MetricUnit;
+
+import java.util.Map;
+
+/**
+ * NRBackend forwarding to the New Relic agent's static API.
+ */
+final class NRAgentBackend implements NRBackend {
+
+    static final NRAgentBackend INSTANCE = new NRAgentBackend();
+
+    private NRAgentBackend() {
+    }
+
+    @Override
+    public void start(Context context, NRConfig config) {
+        NewRelic.withApplicationToken(config.newRelicToken)
+                .withDefaultInteractions(config.isDefaultInteractions())
+                .withCrashReportingEnabled(config.isCrashReportingEnabled())
+                .withLoggingEnabled(config.isLoggingEnabled())
+                .withAnalyticsEvents(config.isAnalyticsEvents())
+                .withInteractionTracing(config.isInteractionTracking())
+                .start(context);
+    }
+
+    @Override
+    public String startInteraction(String actionName) {
+        return NewRelic.startInteraction(actionName);  // NewRelic.startInteraction("RefreshContacts");
+    }
+
+    @Override
+    public void endInteraction(String interactionID) {
+        NewRelic.endInteraction(interactionID);
+    }
+
+    @Override
+    public void setInteractionName(String interactionName) {
+        //Rename the in-flight interaction
+        /*NewRelic.setInteractionName("Display MyCustomInteraction");*/
+        NewRelic.setInteractionName(interactionName);
+    }
+
+    @Override
+    public boolean recordBreadcrumb(String eventName, Map<String, Object> eventAttributes) {
+        return NewRelic.recordBreadcrumb(eventName, eventAttributes);
+    }
+
+    @Override
+    public boolean recordCustomEvent(String eventType, String eventName, Map<String, Object> eventAttributes) {
+        return NewRelic.recordCustomEvent(eventType, eventName, eventAttributes);
+    }
+
+    @Override
+    public void crashNow(String message) {
+        if (null == message) {
+            NewRelic.crashNow();
+        } else {
+            NewRelic.crashNow(message);
+        }
+    }
+
+    @Override
+    public String currentSessionId() {
+        return NewRelic.currentSessionId();
+    }
+
+    @Override
+    public void noticeHttpTransaction(String url, String httpMethod, int statusCode, long startTime, long endTime, long bytesSent, long bytesReceived, String responseBody) {
+        if (null == responseBody) {
+            NewRelic.noticeHttpTransaction(url, httpMethod, statusCode, startTime, endTime, bytesSent, bytesReceived);
+        } else {
+            NewRelic.noticeHttpTransaction(url, httpMethod, statusCode, startTime, endTime, bytesSent, bytesReceived, responseBody);
+        }
+    }
+
+    @Override
+    public void noticeNetworkFailure(String url, String httpMethod, long startTime, long endTime, Exception exception) {
+        NewRelic.noticeNetworkFailure(url, httpMethod, startTime, endTime, exception);
+    }
+
+    @Override
+    public boolean recordHandledException(Exception exception, Map<String, Object> exceptionAttributes) {
+        return NewRelic.recordHandledException(exception, exceptionAttributes);
+    }
+
+    @Override
+    public void setMaxEventBufferTime(int maxBufferTimeInSec) {
+        NewRelic.setMaxEventBufferTime(maxBufferTimeInSec);
+    }
+
+    @Override
+    public void setMaxEventPoolSize(int maxSize) {
+        NewRelic.setMaxEventPoolSize(maxSize);
+    }
+
+    @Override
+    public boolean setUserId(String userId) {
+        return NewRelic.setUserId(userId); //NewRelic.setUserId("SampleUserName");
+    }
+
+    @Override
+    public void recordMetric(String name, String category, double value) {
+        NewRelic.recordMetric(name, category, value);
+    }
+
+    @Override
+    public void recordMetric(String name, String category, int count, double totalValue, double exclusiveValue, MetricUnit countUnit, MetricUnit valueUnit) {
+        if (null == countUnit && null == valueUnit) {
+            NewRelic.recordMetric(name, category, count, totalValue, exclusiveValue);
+        } else {
+            NewRelic.recordMetric(name, category, count, totalValue, exclusiveValue, countUnit, valueUnit);
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.newrelic;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Attribute map packed into a single byte array, for attributes held by the SDK's queues and buffers.
+ * <p>
+ * A HashMap of attributes costs a table, an entry per attribute, a boxed value and key and value
+ * strings. Here keys are interned into a process-wide dictionary and written as small ids,
+ * numbers and booleans are stored unboxed and strings as UTF-8 bytes. Values of any other type
+ * are kept as references next to the bytes. Decoding restores the same value types.
+ * <p>
+ * Portable encodings (see {@link #encodePortable(Map)}) write keys inline instead of as
+ * dictionary ids, for bytes that outlive the process.
+ */
+final class NRAttributes {
+
+    static final NRAttributes EMPTY = new NRAttributes(new byte[0], 0, null);
+
+    /* bound on interned keys, keys beyond it are written inline */
+    static final int MAX_KEYS = 4096;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte FLOAT = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte STRING = 7;
+    private static final byte OBJECT = 8;
+    private static final byte SHORT = 9;
+    private static final byte BYTE = 10;
+
+    /* shared key dictionary, ids start at 1 as 0 marks an inline key */
+    private static final ConcurrentHashMap<String, Integer> keyIds = new ConcurrentHashMap<>();
+    private static final AtomicReferenceArray<String> keys = new AtomicReferenceArray<>(MAX_KEYS + 1);
+    private static int nextKeyId = 1;
+
+    /* encoding scratch space, copied out at the end */
+    private static final ThreadLocal<Writer> writer = new ThreadLocal<Writer>() {
+        @Override
+        protected Writer initialValue() {
+            return new Writer();
+        }
+    };
+
+    private final byte[] bytes;
+    private final int size;
+    private final Object[] objects;
+
+    private NRAttributes(byte[] bytes, int size, Object[] objects) {
+        this.bytes = bytes;
+        this.size = size;
+        this.objects = objects;
+    }
+
+    /**
+     * @param attributes attributes, may be null
+     * @return encoded attributes, null if attributes is null
+     */
+    static NRAttributes encode(Map<String, Object> attributes) {
+        return encode(attributes, false);
+    }
+
+    /**
+     * Encodes with inline keys, so {@link #toByteArray()} can be decoded by another process.
+     * Values other than strings, numbers and booleans are written as strings.
+     */
+    static NRAttributes encodePortable(Map<String, Object> attributes) {
+        return encode(attributes, true);
+    }
+
+    private static NRAttributes encode(Map<String, Object> attributes, boolean portable) {
+        if (null == attributes) {
+            return null;
+        }
+        if (attributes.isEmpty()) {
+            return EMPTY;
+        }
+
+        Writer w = writer.get();
+        w.reset();
+        List<Object> objects = null;
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            String key = attribute.getKey();
+            int id = portable || null == key ? 0 : keyId(key);
+            w.writeVarInt(id);
+            if (id == 0) {
+                w.writeString(String.valueOf(key));
+            }
+
+            Object value = attribute.getValue();
+            if (null == value) {
+                w.writeByte(NULL);
+            } else if (value instanceof String) {
+                w.writeByte(STRING);
+                w.writeString((String) value);
+            } else if (value instanceof Boolean) {
+                w.writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Integer) {
+                w.writeByte(INT);
+                w.writeVarLong(zigZag((Integer) value));
+            } else if (value instanceof Long) {
+                w.writeByte(LONG);
+                w.writeVarLong(zigZag((Long) value));
+            } else if (value instanceof Double) {
+                w.writeByte(DOUBLE);
+                w.writeLong(Double.doubleToRawLongBits((Double) value));
+            } else if (value instanceof Float) {
+                w.writeByte(FLOAT);
+                w.writeInt(Float.floatToRawIntBits((Float) value));
+            } else if (value instanceof Short) {
+                w.writeByte(SHORT);
+                w.writeVarLong(zigZag((Short) value));
+            } else if (value instanceof Byte) {
+                w.writeByte(BYTE);
+                w.writeByte((Byte) value);
+            } else if (portable) {
+                w.writeByte(STRING);
+                w.writeString(value.toString());
+            } else {
+                if (null == objects) {
+                    objects = new ArrayList<>(2);
+                }
+                w.writeByte(OBJECT);
+                w.writeVarInt(objects.size());
+                objects.add(value);
+            }
+        }
+
+        return new NRAttributes(w.toByteArray(), attributes.size(), null == objects ? null : objects.toArray());
+    }
+
+    /**
+     * Decodes bytes from {@link #toByteArray()} of a portable encoding.
+     */
+    static NRAttributes fromByteArray(byte[] bytes, int size) {
+        return new NRAttributes(bytes, size, null);
+    }
+
+    /**
+     * @return a new mutable map holding the attributes
+     */
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>(Math.max(2, (int) (size / 0.75f) + 1));
+        Reader r = new Reader(bytes);
+        for (int i = 0; i < size; i++) {
+            int id = r.readVarInt();
+            String key = id == 0 ? r.readString() : keys.get(id);
+
+            byte type = r.readByte();
+            switch (type) {
+                case NULL:
+                    map.put(key, null);
+                    break;
+                case TRUE:
+                    map.put(key, Boolean.TRUE);
+                    break;
+                case FALSE:
+                    map.put(key, Boolean.FALSE);
+                    break;
+                case INT:
+                    map.put(key, (int) unZigZag(r.readVarLong()));
+                    break;
+                case LONG:
+                    map.put(key, unZigZag(r.readVarLong()));
+                    break;
+                case DOUBLE:
+                    map.put(key, Double.longBitsToDouble(r.readLong()));
+                    break;
+                case FLOAT:
+                    map.put(key, Float.intBitsToFloat(r.readInt()));
+                    break;
+                case SHORT:
+                    map.put(key, (short) unZigZag(r.readVarLong()));
+                    break;
+                case BYTE:
+                    map.put(key, r.readByte());
+                    break;
+                case STRING:
+                    map.put(key, r.readString());
+                    break;
+                case OBJECT:
+                    map.put(key, objects[r.readVarInt()]);
+                    break;
+                default:
+                    throw new IllegalStateException("unknown attribute type " + type);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @return number of attributes
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the encoded bytes, shared and not to be modified
+     */
+    byte[] toByteArray() {
+        return bytes;
+    }
+
+    /**
+     * @return dictionary id of the key, interning it if needed, 0 if it is written inline
+     */
+    static int keyId(String key) {
+        Integer id = keyIds.get(key);
+        if (null != id) {
+            return id;
+        }
+
+        synchronized (keyIds) {
+            id = keyIds.get(key);
+            if (null != id) {
+                return id;
+            }
+            if (nextKeyId > MAX_KEYS) {
+                return 0;
+            }
+
+            int created = nextKeyId++;
+            // published before the id, so a reader holding the id always finds the key
+            keys.set(created, key);
+            keyIds.put(key, created);
+            return created;
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Growable byte buffer, reused per thread.
+     */
+    private static final class Writer {
+        private byte[] buffer = new byte[256];
+        private int position;
+
+        void reset() {
+            position = 0;
+        }
+
+        private void ensure(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            }
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeVarInt(int value) {
+            writeVarLong(value & 0xffffffffL);
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            int length = value.length();
+            boolean ascii = true;
+            for (int i = 0; i < length && ascii; i++) {
+                ascii = value.charAt(i) < 0x80;
+            }
+
+            if (ascii) {
+                // the common case, no intermediate byte array
+                writeVarInt(length);
+                ensure(length);
+                for (int i = 0; i < length; i++) {
+                    buffer[position++] = (byte) value.charAt(i);
+                }
+            } else {
+                byte[] utf8 = value.getBytes(UTF_8);
+                writeVarInt(utf8.length);
+                ensure(utf8.length);
+                System.arraycopy(utf8, 0, buffer, position, utf8.length);
+                position += utf8.length;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            return buffer[position++];
+        }
+
+        int readInt() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (buffer[position++] & 0xff);
+            }
+            return value;
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xff);
+            }
+            return value;
+        }
+
+        int readVarInt() {
+            return (int) readVarLong();
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        String readString() {
+            int length = readVarInt();
+            String value = new String(buffer, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.newrelic;
+
+import android.content.Context;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+
+import java.util.Map;
+
+/**
+ * Telemetry backend NRInstance dispatches every agent call through.
+ * <p>
+ * NRAgentBackend forwards to the New Relic agent, NRNoopBackend drops everything and is used
+ * for features disabled in NRConfig, NRRecordingBackend keeps calls in memory so the facade
+ * can be exercised on a plain JVM.
+ */
+interface NRBackend {
+
+    void start(Context context, NRConfig config);
+
+    String startInteraction(String actionName);
+
+    void endInteraction(String interactionID);
+
+    void setInteractionName(String interactionName);
+
+    boolean recordBreadcrumb(String eventName, Map<String, Object> eventAttributes);
+
+    boolean recordCustomEvent(String eventType, String eventName, Map<String, Object> eventAttributes);
+
+    void crashNow(String message);
+
+    String currentSessionId();
+
+    /**
+     * @param responseBody optional, null if not captured
+     */
+    void noticeHttpTransaction(String url, String httpMethod, int statusCode, long startTime, long endTime, long bytesSent, long bytesReceived, String responseBody);
+
+    void noticeNetworkFailure(String url, String httpMethod, long startTime, long endTime, Exception exception);
+
+    /**
+     * @param exceptionAttributes never null
+     */
+    boolean recordHandledException(Exception exception, Map<String, Object> exceptionAttributes);
+
+    void setMaxEventBufferTime(int maxBufferTimeInSec);
+
+    void setMaxEventPoolSize(int maxSize);
+
+    boolean setUserId(String userId);
+
+    void recordMetric(String name, String category, double value);
+
+    /**
+     * @param countUnit optional, null for metrics without units
+     * @param valueUnit optional, null for metrics without units
+     */
+    void recordMetric(String name, String category, int count, double totalValue, double exclusiveValue, MetricUnit countUnit, MetricUnit valueUnit);
+}
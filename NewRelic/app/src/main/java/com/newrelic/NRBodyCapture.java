@@ -0,0 +1,189 @@
+package com.newrelic;
+
+import com.newrelic.utils.BytePool;
+import com.newrelic.utils.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Keeps the first bytes of an error response body, for noticeHttpTransaction(..., responseBody).
+ * <p>
+ * Bytes are written to it as the body streams by (it is an OutputStream), anything past the
+ * capture limit set with NRConfig.withResponseBodyCapture() is ignored. Bytes go to a pooled
+ * buffer, only the captured prefix is decoded, so large error payloads cost no allocation
+ * beyond the resulting String.
+ * <pre>
+ * NRBodyCapture capture = NRBodyCapture.start(statusCode);   // null unless an error with capture enabled
+ * ... capture.write(chunk, 0, length) while reading the body ...
+ * String responseBody = capture.finish();
+ * </pre>
+ */
+public final class NRBodyCapture extends OutputStream {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /* idle buffers kept for reuse, concurrent error responses beyond it allocate */
+    private static final int POOLED_BUFFERS = 4;
+
+    private static volatile BytePool pool;
+
+    private final BytePool owner;
+    private byte[] buffer;
+    private int size;
+
+    private NRBodyCapture(BytePool owner) {
+        this.owner = owner;
+        this.buffer = owner.acquire();
+    }
+
+    /**
+     * @param statusCode status code of the response
+     * @return a capture for the body, or null if bodies of that status code are not captured
+     */
+    public static NRBodyCapture start(int statusCode) {
+        int limit = captureLimit();
+        if (limit <= 0 || !NRHttpAggregator.isError(statusCode)) {
+            return null;
+        }
+        return new NRBodyCapture(pool(limit));
+    }
+
+    /**
+     * Reads the captured prefix of a body, for callers reading it just to report it.
+     * Reads at most the capture limit from the stream, the stream is not closed.
+     *
+     * @param statusCode status code of the response
+     * @param body       response body
+     * @return the decoded prefix, null if bodies of that status code are not captured
+     * @throws IOException if reading fails
+     */
+    public static String read(int statusCode, InputStream body) throws IOException {
+        NRBodyCapture capture = start(statusCode);
+        if (null == capture) {
+            return null;
+        }
+
+        try {
+            int read;
+            while (capture.remaining() > 0 && (read = body.read(capture.buffer, capture.size, capture.remaining())) != -1) {
+                capture.size += read;
+            }
+        } catch (IOException e) {
+            capture.discard();
+            throw e;
+        }
+        return capture.finish();
+    }
+
+    /**
+     * @return bytes still accepted, 0 once the limit is reached
+     */
+    public synchronized int remaining() {
+        return null == buffer ? 0 : buffer.length - size;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        if (remaining() > 0) {
+            buffer[size++] = (byte) b;
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        int count = Math.min(len, remaining());
+        if (count > 0) {
+            System.arraycopy(b, off, buffer, size, count);
+            size += count;
+        }
+    }
+
+    /**
+     * Decodes the captured prefix and returns the buffer to the pool. Later writes are ignored.
+     *
+     * @return captured prefix as UTF-8, null if nothing was captured or already finished
+     */
+    public synchronized String finish() {
+        if (null == buffer) {
+            return null;
+        }
+
+        // do not decode a character cut in half by the limit
+        int end = size;
+        if (end == buffer.length) {
+            end = completeUtf8Length(buffer, end);
+        }
+
+        String body = end == 0 ? null : new String(buffer, 0, end, UTF_8);
+        discard();
+        return body;
+    }
+
+    /**
+     * Returns the buffer to the pool without decoding.
+     */
+    public synchronized void discard() {
+        if (null != buffer) {
+            owner.release(buffer);
+            buffer = null;
+            size = 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        discard();
+    }
+
+    private static int completeUtf8Length(byte[] bytes, int length) {
+        // walk back over continuation bytes to the lead byte of the last character
+        int lead = length - 1;
+        while (lead > 0 && length - lead < 4 && (bytes[lead] & 0xc0) == 0x80) {
+            lead--;
+        }
+
+        int b = bytes[lead] & 0xff;
+        int expected = b < 0x80 ? 1 : b >= 0xf0 ? 4 : b >= 0xe0 ? 3 : b >= 0xc0 ? 2 : 1;
+        return lead + expected <= length ? length : lead;
+    }
+
+    /**
+     * Applies the capture limit to a body that was read whole.
+     *
+     * @param limit capture limit, 0 if capture is disabled
+     * @return the body, its prefix, or null if bodies of that status code are not captured
+     */
+    static String limit(int statusCode, String responseBody, int limit) {
+        if (Utils.isEmptyOrNull(responseBody)) {
+            return null;
+        }
+        if (limit == 0) {
+            return responseBody;
+        }
+        if (!NRHttpAggregator.isError(statusCode)) {
+            return null;
+        }
+        // chars rather than bytes, good enough to bound the copy
+        return responseBody.length() > limit ? responseBody.substring(0, limit) : responseBody;
+    }
+
+    /**
+     * @return capture limit in bytes from the current config, 0 if capture is disabled
+     */
+    static int captureLimit() {
+        NRInstance instance = NRInstance.getInstance();
+        return null == instance ? 0 : instance.getConfig().getResponseBodyCapture();
+    }
+
+    private static BytePool pool(int limit) {
+        BytePool p = pool;
+        if (null == p || p.getArraySize() != limit) {
+            p = new BytePool(limit, POOLED_BUFFERS);
+            pool = p;
+        }
+        return p;
+    }
+}
@@ -0,0 +1,115 @@
+package com.newrelic;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the most recent breadcrumbs in preallocated slots instead of recording each one as an event.
+ * They are recorded as MobileBreadcrumb events only when flushed, i.e. before a handled exception
+ * or an uncaught crash is reported, with a "breadcrumbTimestamp" attribute holding the time they were left.
+ */
+final class NRBreadcrumbRing {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRBreadcrumbRing.class.getSimpleName());
+
+    static final String TIMESTAMP = "breadcrumbTimestamp";
+
+    private final Slot[] slots;
+    private final AtomicLong next = new AtomicLong();
+
+    /* sequence of the first breadcrumb not flushed yet, guarded by this */
+    private long flushed;
+
+    NRBreadcrumbRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+
+        slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Overwrites the oldest slot. Attributes are encoded, the caller may reuse the map.
+     */
+    void add(String eventName, Map<String, Object> eventAttributes) {
+        NRAttributes attributes = NRAttributes.encode(eventAttributes);
+        long timestamp = System.currentTimeMillis();
+
+        long seq = next.getAndIncrement();
+        Slot slot = slots[(int) (seq % slots.length)];
+        synchronized (slot) {
+            // a writer lapped by a faster one must not overwrite the newer breadcrumb
+            if (seq >= slot.seq) {
+                slot.seq = seq;
+                slot.eventName = eventName;
+                slot.attributes = attributes;
+                slot.timestamp = timestamp;
+            }
+        }
+    }
+
+    /**
+     * @return number of breadcrumbs waiting for a flush
+     */
+    synchronized int size() {
+        long end = next.get();
+        return (int) (end - Math.max(flushed, end - slots.length));
+    }
+
+    /**
+     * Records the buffered breadcrumbs, oldest first, and empties the ring.
+     *
+     * @return number of breadcrumbs recorded
+     */
+    synchronized int flush(NRInstance instance) {
+        long end = next.get();
+        long start = Math.max(flushed, end - slots.length);
+        flushed = end;
+
+        int recorded = 0;
+        for (long seq = start; seq < end; seq++) {
+            Slot slot = slots[(int) (seq % slots.length)];
+            String eventName;
+            NRAttributes attributes;
+            long timestamp;
+            synchronized (slot) {
+                if (slot.seq != seq) {
+                    // overwritten meanwhile, or still being written
+                    continue;
+                }
+                eventName = slot.eventName;
+                attributes = slot.attributes;
+                timestamp = slot.timestamp;
+                slot.eventName = null;
+                slot.attributes = null;
+            }
+
+            try {
+                Map<String, Object> eventAttributes = null == attributes ? new HashMap<String, Object>() : attributes.toMap();
+                eventAttributes.put(TIMESTAMP, timestamp);
+                if (instance.forwardBreadcrumb(eventName, eventAttributes)) {
+                    recorded++;
+                }
+            } catch (Exception e) {
+                logger.error("error in flush()", e);
+            }
+        }
+        return recorded;
+    }
+
+    private static final class Slot {
+        long seq = -1;
+        String eventName;
+        NRAttributes attributes;
+        long timestamp;
+    }
+}
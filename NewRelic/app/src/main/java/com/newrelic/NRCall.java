@@ -0,0 +1,339 @@
+package com.newrelic;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+
+import java.util.Map;
+
+/**
+ * A validated NRSdk call which can be executed later against NRInstance,
+ * e.g. on the dispatcher thread when async dispatch is enabled.
+ */
+abstract class NRCall {
+
+    /* API method, failures are counted against it */
+    final NRStats.Api api;
+
+    NRCall(NRStats.Api api) {
+        this.api = api;
+    }
+
+    /**
+     * Copies caller owned state (attribute maps) before the call leaves the caller's thread.
+     * Attributes are kept encoded while the call waits in a queue or buffer.
+     * Detaching again is a no-op, e.g. when a pre-init buffered call is replayed through the dispatcher.
+     */
+    void detach() {
+    }
+
+    abstract boolean invoke(NRInstance instance);
+
+    /**
+     * @return the caller's attributes, or a decoded copy once detached
+     */
+    static Map<String, Object> attributes(Map<String, Object> attributes, NRAttributes detached) {
+        return null == detached ? attributes : detached.toMap();
+    }
+
+    static final class CustomEvent extends NRCall {
+        private final String eventType;
+        private final String eventName;
+        private Map<String, Object> eventAttributes;
+        private NRAttributes detachedAttributes;
+
+        CustomEvent(String eventType, String eventName, Map<String, Object> eventAttributes) {
+            super(NRStats.Api.RECORD_CUSTOM_EVENT);
+            this.eventType = eventType;
+            this.eventName = eventName;
+            this.eventAttributes = eventAttributes;
+        }
+
+        @Override
+        void detach() {
+            if (null != detachedAttributes || null == eventAttributes) {
+                return;
+            }
+            detachedAttributes = NRAttributes.encode(eventAttributes);
+            eventAttributes = null;
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            return instance.recordCustomEvent(eventType, eventName, attributes(eventAttributes, detachedAttributes));
+        }
+    }
+
+    static final class Breadcrumb extends NRCall {
+        private final String eventName;
+        private Map<String, Object> eventAttributes;
+        private NRAttributes detachedAttributes;
+
+        Breadcrumb(String eventName, Map<String, Object> eventAttributes) {
+            super(NRStats.Api.RECORD_BREADCRUMB);
+            this.eventName = eventName;
+            this.eventAttributes = eventAttributes;
+        }
+
+        @Override
+        void detach() {
+            if (null != detachedAttributes || null == eventAttributes) {
+                return;
+            }
+            detachedAttributes = NRAttributes.encode(eventAttributes);
+            eventAttributes = null;
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            return instance.recordBreadcrumb(eventName, attributes(eventAttributes, detachedAttributes));
+        }
+    }
+
+    static final class HandledException extends NRCall {
+        private final Exception exception;
+        private Map<String, Object> exceptionAttributes;
+        private NRAttributes detachedAttributes;
+
+        HandledException(Exception exception, Map<String, Object> exceptionAttributes) {
+            super(NRStats.Api.RECORD_HANDLED_EXCEPTION);
+            this.exception = exception;
+            this.exceptionAttributes = exceptionAttributes;
+        }
+
+        @Override
+        void detach() {
+            if (null != detachedAttributes || null == exceptionAttributes) {
+                return;
+            }
+            detachedAttributes = NRAttributes.encode(exceptionAttributes);
+            exceptionAttributes = null;
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            return instance.recordHandledException(exception, attributes(exceptionAttributes, detachedAttributes));
+        }
+    }
+
+    static final class HttpTransaction extends NRCall {
+        private final String url;
+        private final String httpMethod;
+        private final int statusCode;
+        private final long startTime;
+        private final long endTime;
+        private final long bytesSent;
+        private final long bytesReceived;
+        private final String responseBody;
+        /* false for a call buffered before init(), whose body is cut once the config is known */
+        private final boolean bodyLimited;
+
+        HttpTransaction(String url, String httpMethod, int statusCode, long startTime, long endTime, long bytesSent, long bytesReceived, String responseBody, boolean bodyLimited) {
+            super(NRStats.Api.NOTICE_HTTP_TRANSACTION);
+            this.url = url;
+            this.httpMethod = httpMethod;
+            this.statusCode = statusCode;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.responseBody = responseBody;
+            this.bodyLimited = bodyLimited;
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            String body = bodyLimited ? responseBody
+                    : NRBodyCapture.limit(statusCode, responseBody, instance.getConfig().getResponseBodyCapture());
+            instance.noticeHttpTransaction(url, httpMethod, statusCode, startTime, endTime, bytesSent, bytesReceived, body);
+            return true;
+        }
+    }
+
+    static final class NetworkFailure extends NRCall {
+        private final String url;
+        private final String httpMethod;
+        private final long startTime;
+        private final long endTime;
+        private final Exception exception;
+
+        NetworkFailure(String url, String httpMethod, long startTime, long endTime, Exception exception) {
+            super(NRStats.Api.NOTICE_NETWORK_FAILURE);
+            this.url = url;
+            this.httpMethod = httpMethod;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.exception = exception;
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            instance.noticeNetworkFailure(url, httpMethod, startTime, endTime, exception);
+            return true;
+        }
+    }
+
+    static final class EndInteraction extends NRCall {
+        private final String interactionID;
+
+        EndInteraction(String interactionID) {
+            super(NRStats.Api.END_INTERACTION);
+            this.interactionID = interactionID;
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            instance.endInteraction(interactionID);
+            return true;
+        }
+    }
+
+    static final class InteractionName extends NRCall {
+        private final String interactionName;
+
+        InteractionName(String interactionName) {
+            super(NRStats.Api.SET_INTERACTION_NAME);
+            this.interactionName = interactionName;
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            instance.setInteractionName(interactionName);
+            return true;
+        }
+    }
+
+    static final class UserId extends NRCall {
+        private final String userId;
+
+        UserId(String userId) {
+            super(NRStats.Api.SET_USER_ID);
+            this.userId = userId;
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            return instance.setUserId(userId);
+        }
+    }
+
+    static final class MaxEventBufferTime extends NRCall {
+        private final int maxBufferTimeInSec;
+
+        MaxEventBufferTime(int maxBufferTimeInSec) {
+            super(NRStats.Api.SET_MAX_EVENT_BUFFER_TIME);
+            this.maxBufferTimeInSec = maxBufferTimeInSec;
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            instance.setMaxEventBufferTime(maxBufferTimeInSec);
+            return true;
+        }
+    }
+
+    static final class MaxEventPoolSize extends NRCall {
+        private final int maxSize;
+
+        MaxEventPoolSize(int maxSize) {
+            super(NRStats.Api.SET_MAX_EVENT_POOL_SIZE);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            instance.setMaxEventPoolSize(maxSize);
+            return true;
+        }
+    }
+
+    static final class Metric extends NRCall {
+        private final String metricName;
+        private final String category;
+        private final double value;
+
+        Metric(String metricName, String category, double value) {
+            super(NRStats.Api.RECORD_METRIC);
+            this.metricName = metricName;
+            this.category = category;
+            this.value = value;
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            instance.recordMetric(metricName, category, value);
+            return true;
+        }
+    }
+
+    static final class MetricSummary extends NRCall {
+        private final String metricName;
+        private final String category;
+        private final int count;
+        private final double totalValue;
+        private final double exclusiveValue;
+
+        MetricSummary(String metricName, String category, int count, double totalValue, double exclusiveValue) {
+            super(NRStats.Api.RECORD_METRIC);
+            this.metricName = metricName;
+            this.category = category;
+            this.count = count;
+            this.totalValue = totalValue;
+            this.exclusiveValue = exclusiveValue;
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            instance.recordMetric(metricName, category, count, totalValue, exclusiveValue);
+            return true;
+        }
+    }
+
+    static final class UnitMetric extends NRCall {
+        private final String metricName;
+        private final String category;
+        private final double value;
+        private final MetricUnit countUnit;
+        private final MetricUnit valueUnit;
+
+        UnitMetric(String metricName, String category, double value, MetricUnit countUnit, MetricUnit valueUnit) {
+            super(NRStats.Api.RECORD_METRIC);
+            this.metricName = metricName;
+            this.category = category;
+            this.value = value;
+            this.countUnit = countUnit;
+            this.valueUnit = valueUnit;
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            instance.recordMetric(metricName, category, value, countUnit, valueUnit);
+            return true;
+        }
+    }
+
+    static final class UnitMetricSummary extends NRCall {
+        private final String metricName;
+        private final String category;
+        private final int count;
+        private final double totalValue;
+        private final double exclusiveValue;
+        private final MetricUnit countUnit;
+        private final MetricUnit valueUnit;
+
+        UnitMetricSummary(String metricName, String category, int count, double totalValue, double exclusiveValue, MetricUnit countUnit, MetricUnit valueUnit) {
+            super(NRStats.Api.RECORD_METRIC);
+            this.metricName = metricName;
+            this.category = category;
+            this.count = count;
+            this.totalValue = totalValue;
+            this.exclusiveValue = exclusiveValue;
+            this.countUnit = countUnit;
+            this.valueUnit = valueUnit;
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            instance.recordMetric(metricName, category, count, totalValue, exclusiveValue, countUnit, valueUnit);
+            return true;
+        }
+    }
+}
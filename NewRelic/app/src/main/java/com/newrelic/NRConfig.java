@@ -2,21 +2,168 @@ package com.newrelic;
 
 import com.newrelic.utils.Utils;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 public class NRConfig {
 
+    /**
+     * What to do with a call when the async dispatch queue is full.
+     */
+    public enum OverflowPolicy {
+        /* evict the oldest queued call */
+        DROP_OLDEST,
+        /* reject the new call */
+        DROP_NEWEST,
+        /* wait on the calling thread until there is space */
+        BLOCK
+    }
+
+    /**
+     * When the agent gets started by NRSdk.init().
+     */
+    public enum StartupMode {
+        /* synchronously, on the calling thread */
+        IMMEDIATE,
+        /* on a background thread, init() returns right away */
+        BACKGROUND,
+        /* on a background thread once the first frame has been drawn */
+        AFTER_FIRST_FRAME
+    }
+
+    private static final int MAX_DISPATCH_QUEUE_CAPACITY = 1 << 16;
+
+    private static final int MAX_EVENT_SPOOL_SIZE = 16 * 1024;
+
+    static final int DEFAULT_SPAN_LEAK_THRESHOLD = 300;
+
+    private static final int MAX_RESPONSE_BODY_CAPTURE = 64 * 1024;
+
     public final String newRelicToken;
 
+    /* set on snapshots, which must not change once published */
+    private final boolean frozen;
+
     private boolean defaultInteractions = true;
     private boolean analyticsEvents = true;
     private boolean crashReportingEnabled = true;
     private boolean interactionTracking = true;
     private boolean loggingEnabled = true;
+    private boolean asyncDispatch = false;
+    private int dispatchQueueCapacity = 1024;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private StartupMode startupMode = StartupMode.IMMEDIATE;
+    private boolean metricAggregation = false;
+    private int metricFlushInterval = 60;
+    private Map<String, Double> eventSampleRates = new HashMap<>();
+    private Map<String, Integer> eventRateLimits = new HashMap<>();
+    private int defaultEventRateLimit = 0;
+    private boolean adaptiveHarvest = false;
+    private int eventSpoolSize = 0;
+    private int spanLeakThreshold = DEFAULT_SPAN_LEAK_THRESHOLD;
+    private boolean httpAggregation = false;
+    private boolean latencyHistograms = false;
+    private int latencyFlushInterval = 60;
+    private int responseBodyCapture = 0;
+    private int exceptionDedupWindow = 0;
+    private int breadcrumbBufferSize = 0;
+    private boolean sdkStatsReporting = false;
+    private boolean frameMonitor = false;
+    private int stallThreshold = 0;
+    private Set<String> profiledInteractions = new HashSet<>();
+    private int profilerSampleInterval = 20;
 
     public NRConfig(String newRelicToken) {
         if (Utils.isEmptyOrNull(newRelicToken))
             throw new IllegalArgumentException("New Relic Token can not be null or empty");
 
         this.newRelicToken = newRelicToken;
+        this.frozen = false;
+    }
+
+    /* copy constructor for snapshot() */
+    private NRConfig(NRConfig source) {
+        this.newRelicToken = source.newRelicToken;
+        this.defaultInteractions = source.defaultInteractions;
+        this.analyticsEvents = source.analyticsEvents;
+        this.crashReportingEnabled = source.crashReportingEnabled;
+        this.interactionTracking = source.interactionTracking;
+        this.loggingEnabled = source.loggingEnabled;
+        this.asyncDispatch = source.asyncDispatch;
+        this.dispatchQueueCapacity = source.dispatchQueueCapacity;
+        this.overflowPolicy = source.overflowPolicy;
+        this.startupMode = source.startupMode;
+        this.metricAggregation = source.metricAggregation;
+        this.metricFlushInterval = source.metricFlushInterval;
+        this.eventSampleRates = Collections.unmodifiableMap(new HashMap<>(source.eventSampleRates));
+        this.eventRateLimits = Collections.unmodifiableMap(new HashMap<>(source.eventRateLimits));
+        this.defaultEventRateLimit = source.defaultEventRateLimit;
+        this.adaptiveHarvest = source.adaptiveHarvest;
+        this.eventSpoolSize = source.eventSpoolSize;
+        this.spanLeakThreshold = source.spanLeakThreshold;
+        this.httpAggregation = source.httpAggregation;
+        this.latencyHistograms = source.latencyHistograms;
+        this.latencyFlushInterval = source.latencyFlushInterval;
+        this.responseBodyCapture = source.responseBodyCapture;
+        this.exceptionDedupWindow = source.exceptionDedupWindow;
+        this.breadcrumbBufferSize = source.breadcrumbBufferSize;
+        this.sdkStatsReporting = source.sdkStatsReporting;
+        this.frameMonitor = source.frameMonitor;
+        this.stallThreshold = source.stallThreshold;
+        this.profiledInteractions = Collections.unmodifiableSet(new HashSet<>(source.profiledInteractions));
+        this.profilerSampleInterval = source.profilerSampleInterval;
+        this.frozen = true;
+    }
+
+    /**
+     * @return an immutable copy of this config, safe to share between threads
+     */
+    NRConfig snapshot() {
+        return frozen ? this : new NRConfig(this);
+    }
+
+    /**
+     * @return true if both configs hold the same values
+     */
+    boolean isSameAs(NRConfig other) {
+        return this == other || (null != other
+                && newRelicToken.equals(other.newRelicToken)
+                && defaultInteractions == other.defaultInteractions
+                && analyticsEvents == other.analyticsEvents
+                && crashReportingEnabled == other.crashReportingEnabled
+                && interactionTracking == other.interactionTracking
+                && loggingEnabled == other.loggingEnabled
+                && asyncDispatch == other.asyncDispatch
+                && dispatchQueueCapacity == other.dispatchQueueCapacity
+                && overflowPolicy == other.overflowPolicy
+                && startupMode == other.startupMode
+                && metricAggregation == other.metricAggregation
+                && metricFlushInterval == other.metricFlushInterval
+                && eventSampleRates.equals(other.eventSampleRates)
+                && eventRateLimits.equals(other.eventRateLimits)
+                && defaultEventRateLimit == other.defaultEventRateLimit
+                && adaptiveHarvest == other.adaptiveHarvest
+                && eventSpoolSize == other.eventSpoolSize
+                && spanLeakThreshold == other.spanLeakThreshold
+                && httpAggregation == other.httpAggregation
+                && latencyHistograms == other.latencyHistograms
+                && latencyFlushInterval == other.latencyFlushInterval
+                && responseBodyCapture == other.responseBodyCapture
+                && exceptionDedupWindow == other.exceptionDedupWindow
+                && breadcrumbBufferSize == other.breadcrumbBufferSize
+                && sdkStatsReporting == other.sdkStatsReporting
+                && frameMonitor == other.frameMonitor
+                && stallThreshold == other.stallThreshold
+                && profiledInteractions.equals(other.profiledInteractions)
+                && profilerSampleInterval == other.profilerSampleInterval);
+    }
+
+    private void checkMutable() {
+        if (frozen)
+            throw new IllegalStateException("NRConfig snapshot can not be modified");
     }
 
     /**
@@ -25,6 +172,7 @@ public class NRConfig {
      * @return NRConfig
      */
     public NRConfig withLoggingEnabled(boolean isEnable) {
+        checkMutable();
         this.loggingEnabled = isEnable;
         return this;
     }
@@ -34,6 +182,7 @@ public class NRConfig {
     }
 
     public NRConfig withCrashReporting(boolean isEnable) {
+        checkMutable();
         this.crashReportingEnabled = isEnable;
         return this;
     }
@@ -43,6 +192,7 @@ public class NRConfig {
     }
 
     public NRConfig withDefaultInteractions(boolean isEnable) {
+        checkMutable();
         this.defaultInteractions = isEnable;
         return this;
     }
@@ -57,6 +207,7 @@ public class NRConfig {
      * @return NRConfig
      */
     public NRConfig withAnalyticsEvents(boolean isEnable) {
+        checkMutable();
         this.analyticsEvents = isEnable;
         return this;
     }
@@ -66,6 +217,7 @@ public class NRConfig {
     }
 
     public NRConfig withInteractionTracking(boolean isEnable) {
+        checkMutable();
         this.interactionTracking = isEnable;
         return this;
     }
@@ -73,4 +225,447 @@ public class NRConfig {
     public boolean isInteractionTracking() {
         return this.interactionTracking;
     }
+
+    /**
+     * Enable or disable async dispatch. When enabled, NRSdk calls are queued and forwarded
+     * to the agent by a background worker instead of running on the calling thread.
+     * Methods returning boolean then report whether the call was queued.
+     * @param isEnable for enable/disable
+     * @return NRConfig
+     */
+    public NRConfig withAsyncDispatch(boolean isEnable) {
+        checkMutable();
+        this.asyncDispatch = isEnable;
+        return this;
+    }
+
+    public boolean isAsyncDispatch() {
+        return this.asyncDispatch;
+    }
+
+    /**
+     * Sets the capacity of the async dispatch queue, rounded up to a power of two.
+     * @param capacity queue capacity, 1 to 65536
+     * @return NRConfig
+     */
+    public NRConfig withDispatchQueueCapacity(int capacity) {
+        checkMutable();
+        if (capacity <= 0 || capacity > MAX_DISPATCH_QUEUE_CAPACITY)
+            throw new IllegalArgumentException("Dispatch queue capacity should be minimum 1 OR maximum " + MAX_DISPATCH_QUEUE_CAPACITY);
+
+        this.dispatchQueueCapacity = capacity;
+        return this;
+    }
+
+    public int getDispatchQueueCapacity() {
+        return this.dispatchQueueCapacity;
+    }
+
+    /**
+     * Sets what happens to a call when the async dispatch queue is full.
+     * @param policy OverflowPolicy
+     * @return NRConfig
+     */
+    public NRConfig withOverflowPolicy(OverflowPolicy policy) {
+        checkMutable();
+        if (null == policy)
+            throw new IllegalArgumentException("Overflow policy can not be null");
+
+        this.overflowPolicy = policy;
+        return this;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * Sets when the agent gets started. Calls made before it is ready are buffered
+     * and replayed, see NRSdk.setPreInitBufferCapacity().
+     * @param mode StartupMode
+     * @return NRConfig
+     */
+    public NRConfig withStartupMode(StartupMode mode) {
+        checkMutable();
+        if (null == mode)
+            throw new IllegalArgumentException("Startup mode can not be null");
+
+        this.startupMode = mode;
+        return this;
+    }
+
+    public StartupMode getStartupMode() {
+        return this.startupMode;
+    }
+
+    /**
+     * Enable or disable in-process aggregation of recordMetric() values.
+     * Values are summed per name and category and flushed as one metric per flush interval.
+     * @param isEnable for enable/disable
+     * @return NRConfig
+     */
+    public NRConfig withMetricAggregation(boolean isEnable) {
+        checkMutable();
+        this.metricAggregation = isEnable;
+        return this;
+    }
+
+    public boolean isMetricAggregation() {
+        return this.metricAggregation;
+    }
+
+    /**
+     * Sets how often aggregated metrics are flushed to the agent.
+     * @param flushIntervalInSec flush interval, 1 to 600 seconds. The default value is 60 seconds.
+     * @return NRConfig
+     */
+    public NRConfig withMetricFlushInterval(int flushIntervalInSec) {
+        checkMutable();
+        if (flushIntervalInSec < 1 || flushIntervalInSec > 600)
+            throw new IllegalArgumentException("Metric flush interval should be minimum 1 second OR maximum 600 seconds");
+
+        this.metricFlushInterval = flushIntervalInSec;
+        return this;
+    }
+
+    public int getMetricFlushInterval() {
+        return this.metricFlushInterval;
+    }
+
+    /**
+     * Samples events of a type before they reach the agent's event pool. Kept events
+     * carry a "sampleRate" attribute, so counts can be re-weighted by 1 / sampleRate.
+     * @param eventType event type, "MobileBreadcrumb" for breadcrumbs
+     * @param sampleRate share of events kept, 0 to 1
+     * @return NRConfig
+     */
+    public NRConfig withEventSampleRate(String eventType, double sampleRate) {
+        checkMutable();
+        if (Utils.isEmptyOrNull(eventType))
+            throw new IllegalArgumentException("Event type can not be null or empty");
+        if (!(sampleRate >= 0 && sampleRate <= 1))
+            throw new IllegalArgumentException("Event sample rate should be minimum 0 OR maximum 1");
+
+        if (sampleRate == 1) {
+            this.eventSampleRates.remove(eventType);
+        } else {
+            this.eventSampleRates.put(eventType, sampleRate);
+        }
+        return this;
+    }
+
+    /**
+     * @return sample rate per event type, event types without one are not sampled
+     */
+    public Map<String, Double> getEventSampleRates() {
+        return Collections.unmodifiableMap(this.eventSampleRates);
+    }
+
+    /**
+     * Limits how many events of a type reach the agent's event pool, events beyond the limit are dropped.
+     * Up to a minute's worth of unused permits is kept for bursts.
+     * @param eventType event type, "MobileBreadcrumb" for breadcrumbs
+     * @param eventsPerMinute events per minute, 0 removes the limit
+     * @return NRConfig
+     */
+    public NRConfig withEventRateLimit(String eventType, int eventsPerMinute) {
+        checkMutable();
+        if (Utils.isEmptyOrNull(eventType))
+            throw new IllegalArgumentException("Event type can not be null or empty");
+        if (eventsPerMinute < 0)
+            throw new IllegalArgumentException("Event rate limit should be minimum 0");
+
+        if (eventsPerMinute == 0) {
+            this.eventRateLimits.remove(eventType);
+        } else {
+            this.eventRateLimits.put(eventType, eventsPerMinute);
+        }
+        return this;
+    }
+
+    /**
+     * @return rate limit per event type in events per minute
+     */
+    public Map<String, Integer> getEventRateLimits() {
+        return Collections.unmodifiableMap(this.eventRateLimits);
+    }
+
+    /**
+     * Limits how many events of each type without its own rate limit reach the agent's event pool.
+     * @param eventsPerMinute events per minute and event type, 0 for no limit. The default value is 0.
+     * @return NRConfig
+     */
+    public NRConfig withDefaultEventRateLimit(int eventsPerMinute) {
+        checkMutable();
+        if (eventsPerMinute < 0)
+            throw new IllegalArgumentException("Event rate limit should be minimum 0");
+
+        this.defaultEventRateLimit = eventsPerMinute;
+        return this;
+    }
+
+    public int getDefaultEventRateLimit() {
+        return this.defaultEventRateLimit;
+    }
+
+    /**
+     * Enable or disable adaptive harvest tuning. The max event buffer time is then adjusted to the
+     * observed event rate and the event pool size, overriding values set with NRSdk.setMaxEventBufferTime().
+     * The event pool size is not changed. Must be set before init() to take effect.
+     * @param isEnable for enable/disable
+     * @return NRConfig
+     */
+    public NRConfig withAdaptiveHarvest(boolean isEnable) {
+        checkMutable();
+        this.adaptiveHarvest = isEnable;
+        return this;
+    }
+
+    public boolean isAdaptiveHarvest() {
+        return this.adaptiveHarvest;
+    }
+
+    /**
+     * Enables a crash-safe spool of custom events and breadcrumbs. Events not yet harvested when
+     * the process dies are replayed by the next init(), tagged with a "recovered" attribute.
+     * Must be set before init() to take effect.
+     * @param maxSizeInKb size cap of the spool files, 0 to 16384 KB, 0 disables the spool. The default value is 0.
+     * @return NRConfig
+     */
+    public NRConfig withEventSpool(int maxSizeInKb) {
+        checkMutable();
+        if (maxSizeInKb < 0 || maxSizeInKb > MAX_EVENT_SPOOL_SIZE)
+            throw new IllegalArgumentException("Event spool size should be minimum 0 OR maximum " + MAX_EVENT_SPOOL_SIZE + " KB");
+
+        this.eventSpoolSize = maxSizeInKb;
+        return this;
+    }
+
+    public int getEventSpoolSize() {
+        return this.eventSpoolSize;
+    }
+
+    /**
+     * Sets how long an NRSpan may stay open before it is reported as leaked.
+     * @param thresholdInSec threshold, 1 to 3600 seconds. The default value is 300 seconds.
+     * @return NRConfig
+     */
+    public NRConfig withSpanLeakThreshold(int thresholdInSec) {
+        checkMutable();
+        if (thresholdInSec < 1 || thresholdInSec > 3600)
+            throw new IllegalArgumentException("Span leak threshold should be minimum 1 second OR maximum 3600 seconds");
+
+        this.spanLeakThreshold = thresholdInSec;
+        return this;
+    }
+
+    public int getSpanLeakThreshold() {
+        return this.spanLeakThreshold;
+    }
+
+    /**
+     * Enable or disable in-process aggregation of noticeHttpTransaction() calls per route template,
+     * e.g. "GET https://api.example.com/users/{id}". Aggregates are flushed as metrics every metric
+     * flush interval. Only failed transactions (status code 400 and above) are still sent one by one.
+     * Must be set before init() to take effect.
+     * @param isEnable for enable/disable
+     * @return NRConfig
+     */
+    public NRConfig withHttpAggregation(boolean isEnable) {
+        checkMutable();
+        this.httpAggregation = isEnable;
+        return this;
+    }
+
+    public boolean isHttpAggregation() {
+        return this.httpAggregation;
+    }
+
+    /**
+     * Enable or disable latency histograms of HTTP transactions per route template and of NRSpans
+     * per name. Their p50, p90, p99 and max are recorded as metrics every latency flush interval.
+     * Must be set before init() to take effect.
+     * @param isEnable for enable/disable
+     * @return NRConfig
+     */
+    public NRConfig withLatencyHistograms(boolean isEnable) {
+        checkMutable();
+        this.latencyHistograms = isEnable;
+        return this;
+    }
+
+    public boolean isLatencyHistograms() {
+        return this.latencyHistograms;
+    }
+
+    /**
+     * Sets how often latency percentiles are recorded.
+     * @param flushIntervalInSec flush interval, 1 to 600 seconds. The default value is 60 seconds.
+     * @return NRConfig
+     */
+    public NRConfig withLatencyFlushInterval(int flushIntervalInSec) {
+        checkMutable();
+        if (flushIntervalInSec < 1 || flushIntervalInSec > 600)
+            throw new IllegalArgumentException("Latency flush interval should be minimum 1 second OR maximum 600 seconds");
+
+        this.latencyFlushInterval = flushIntervalInSec;
+        return this;
+    }
+
+    public int getLatencyFlushInterval() {
+        return this.latencyFlushInterval;
+    }
+
+    /**
+     * Limits response bodies reported with noticeHttpTransaction() to the first bytes of error
+     * responses (status code 400 and above). Bodies of other responses are dropped.
+     * Use NRBodyCapture to capture the body while it streams instead of reading it whole.
+     * @param maxBytes bytes kept per body, 0 to 65536, 0 reports bodies as they are. The default value is 0.
+     * @return NRConfig
+     */
+    public NRConfig withResponseBodyCapture(int maxBytes) {
+        checkMutable();
+        if (maxBytes < 0 || maxBytes > MAX_RESPONSE_BODY_CAPTURE)
+            throw new IllegalArgumentException("Response body capture should be minimum 0 OR maximum " + MAX_RESPONSE_BODY_CAPTURE + " bytes");
+
+        this.responseBodyCapture = maxBytes;
+        return this;
+    }
+
+    public int getResponseBodyCapture() {
+        return this.responseBodyCapture;
+    }
+
+    /**
+     * Deduplicates recordHandledException() calls. Within a window only the first exception with the
+     * same class and top stack frames is sent, repeats are counted and sent once at the end of the
+     * window with an "occurrenceCount" attribute. Must be set before init() to take effect.
+     * @param windowInSec window length, 0 to 3600 seconds, 0 disables deduplication. The default value is 0.
+     * @return NRConfig
+     */
+    public NRConfig withExceptionDedupWindow(int windowInSec) {
+        checkMutable();
+        if (windowInSec < 0 || windowInSec > 3600)
+            throw new IllegalArgumentException("Exception dedup window should be minimum 0 seconds OR maximum 3600 seconds");
+
+        this.exceptionDedupWindow = windowInSec;
+        return this;
+    }
+
+    public int getExceptionDedupWindow() {
+        return this.exceptionDedupWindow;
+    }
+
+    /**
+     * Keeps the last breadcrumbs in memory instead of recording each one as an event. They are recorded
+     * only when recordHandledException() is called or, if crash reporting is enabled, the app crashes.
+     * Must be set before init() to take effect.
+     * @param size breadcrumbs kept, 0 to 1000, 0 records every breadcrumb right away. The default value is 0.
+     * @return NRConfig
+     */
+    public NRConfig withBreadcrumbBuffer(int size) {
+        checkMutable();
+        if (size < 0 || size > 1000)
+            throw new IllegalArgumentException("Breadcrumb buffer size should be minimum 0 OR maximum 1000");
+
+        this.breadcrumbBufferSize = size;
+        return this;
+    }
+
+    public int getBreadcrumbBufferSize() {
+        return this.breadcrumbBufferSize;
+    }
+
+    /**
+     * Enable or disable reporting NRSdk.getStats() as metrics in the "NRSdk/Stats" category,
+     * every metric flush interval. Stats are collected either way.
+     * Must be set before init() to take effect.
+     * @param isEnable for enable/disable
+     * @return NRConfig
+     */
+    public NRConfig withSdkStatsReporting(boolean isEnable) {
+        checkMutable();
+        this.sdkStatsReporting = isEnable;
+        return this;
+    }
+
+    public boolean isSdkStatsReporting() {
+        return this.sdkStatsReporting;
+    }
+
+    /**
+     * Enable or disable the frame monitor. It measures main thread frame times and counts slow
+     * (24 ms and longer) and frozen (700 ms and longer) frames per interaction name, see
+     * NRSdk.setInteractionName(). Both are recorded as metrics every metric flush interval.
+     * Must be set before init() to take effect.
+     * @param isEnable for enable/disable
+     * @return NRConfig
+     */
+    public NRConfig withFrameMonitor(boolean isEnable) {
+        checkMutable();
+        this.frameMonitor = isEnable;
+        return this;
+    }
+
+    public boolean isFrameMonitor() {
+        return this.frameMonitor;
+    }
+
+    /**
+     * Enable or disable the main thread stall watchdog. The main thread is sampled while it stays
+     * blocked longer than the threshold, and stalls are reported per blocking stack as handled
+     * exceptions every metric flush interval. Must be set before init() to take effect.
+     * @param thresholdMs stall threshold, 100 to 10000 milliseconds, 0 disables the watchdog. The default value is 0.
+     * @return NRConfig
+     */
+    public NRConfig withStallWatchdog(int thresholdMs) {
+        checkMutable();
+        if (thresholdMs != 0 && (thresholdMs < 100 || thresholdMs > 10000))
+            throw new IllegalArgumentException("Stall threshold should be 0, or minimum 100 milliseconds OR maximum 10000 milliseconds");
+
+        this.stallThreshold = thresholdMs;
+        return this;
+    }
+
+    public int getStallThreshold() {
+        return this.stallThreshold;
+    }
+
+    /**
+     * Profiles an interaction. While an interaction of this name started with NRSdk.startInteraction()
+     * is open, the stack of the thread which started it is sampled. Its hottest stacks are recorded as
+     * "NRSdkProfile" custom events when it ends. Must be set before init() to take effect.
+     * @param actionName interaction name, as passed to startInteraction()
+     * @return NRConfig
+     */
+    public NRConfig withProfiledInteraction(String actionName) {
+        checkMutable();
+        if (Utils.isEmptyOrNull(actionName))
+            throw new IllegalArgumentException("Profiled interaction name can not be null or empty");
+
+        this.profiledInteractions.add(actionName);
+        return this;
+    }
+
+    public Set<String> getProfiledInteractions() {
+        return Collections.unmodifiableSet(this.profiledInteractions);
+    }
+
+    /**
+     * Sets how often profiled interactions are sampled.
+     * @param intervalMs sample interval, 5 to 1000 milliseconds. The default value is 20 milliseconds.
+     * @return NRConfig
+     */
+    public NRConfig withProfilerSampleInterval(int intervalMs) {
+        checkMutable();
+        if (intervalMs < 5 || intervalMs > 1000)
+            throw new IllegalArgumentException("Profiler sample interval should be minimum 5 milliseconds OR maximum 1000 milliseconds");
+
+        this.profilerSampleInterval = intervalMs;
+        return this;
+    }
+
+    public int getProfilerSampleInterval() {
+        return this.profilerSampleInterval;
+    }
 }
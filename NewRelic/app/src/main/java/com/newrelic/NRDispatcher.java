@@ -0,0 +1,142 @@
+package com.newrelic;
+
+import com.newrelic.utils.MpscBoundedQueue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Async dispatch pipeline. NRSdk calls are enqueued by the calling thread and executed
+ * against NRInstance, in order, by a single background worker.
+ */
+class NRDispatcher implements Runnable {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRDispatcher.class.getSimpleName());
+
+    /* producer back-off while waiting for space with OverflowPolicy.BLOCK */
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final NRInstance instance;
+    private final MpscBoundedQueue<NRCall> queue;
+    private final NRConfig.OverflowPolicy overflowPolicy;
+    private final Thread worker;
+
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean waiting = false;
+
+    NRDispatcher(NRInstance instance, int capacity, NRConfig.OverflowPolicy overflowPolicy) {
+        this.instance = instance;
+        this.queue = new MpscBoundedQueue<>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.worker = new Thread(this, "NRSdk-dispatcher");
+        this.worker.setDaemon(true);
+        this.worker.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    static NRDispatcher start(NRInstance instance, NRConfig config) {
+        NRDispatcher dispatcher = new NRDispatcher(instance, config.getDispatchQueueCapacity(), config.getOverflowPolicy());
+        dispatcher.start();
+        return dispatcher;
+    }
+
+    /**
+     * Starts the worker. Calls dispatched before are kept in the queue until then.
+     */
+    void start() {
+        worker.start();
+        logger.info("NRDispatcher started");
+    }
+
+    /**
+     * Enqueues a call, applying the overflow policy when the queue is full.
+     *
+     * @param call NRCall
+     * @return true if the call was queued, false if it was dropped
+     */
+    boolean dispatch(NRCall call) {
+        call.detach();
+
+        if (!queue.offer(call)) {
+            switch (overflowPolicy) {
+                case DROP_NEWEST:
+                    dropped.incrementAndGet();
+                    return false;
+
+                case DROP_OLDEST:
+                    do {
+                        if (null != queue.poll()) {
+                            dropped.incrementAndGet();
+                        }
+                    } while (!queue.offer(call));
+                    break;
+
+                case BLOCK:
+                    do {
+                        wakeUp();
+                        LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                    } while (!queue.offer(call));
+                    break;
+            }
+        }
+
+        wakeUp();
+        return true;
+    }
+
+    private void wakeUp() {
+        if (waiting) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    @Override
+    public void run() {
+        for (; ; ) {
+            NRCall call = queue.poll();
+            if (null == call) {
+                // waiting is set before the emptiness check and read by producers after their offer,
+                // so either the element is seen here or the producer unparks the worker
+                waiting = true;
+                if (queue.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+                continue;
+            }
+
+            try {
+                call.invoke(instance);
+                dispatched.incrementAndGet();
+            } catch (Throwable t) {
+                // the worker must survive, BLOCK callers would wait forever and other policies drop everything
+                NRStats.INSTANCE.failed(call.api);
+                logger.error("error in {}()", call.api.getMethodName(), t);
+            }
+        }
+    }
+
+    /**
+     * @return number of calls executed by the worker
+     */
+    long getDispatchedCount() {
+        return dispatched.get();
+    }
+
+    /**
+     * @return number of calls dropped by the overflow policy
+     */
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return approximate number of calls waiting in the queue
+     */
+    int getPendingCount() {
+        return queue.size();
+    }
+}
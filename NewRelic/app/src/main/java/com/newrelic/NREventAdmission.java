@@ -0,0 +1,155 @@
+package com.newrelic;
+
+import com.newrelic.utils.TokenBucket;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which events make it into the agent's event pool, per event type:
+ * events are first sampled with the configured sample rate, then rate limited by a token bucket.
+ * Keeps one noisy event type from crowding everything else out of the pool.
+ */
+class NREventAdmission {
+
+    /* attribute added to sampled events, counts can be re-weighted by 1 / sampleRate */
+    static final String SAMPLE_RATE_ATTRIBUTE = "sampleRate";
+
+    /* event type of breadcrumbs */
+    static final String BREADCRUMB_EVENT_TYPE = "MobileBreadcrumb";
+
+    /* returned by admit() for a dropped event */
+    static final double DROPPED = 0;
+
+    /* returned by admit() for an event kept without sampling */
+    static final double KEPT = 1;
+
+    /* bound on event types with their own bucket from the default rate limit, the rest share one */
+    static final int MAX_EVENT_TYPES = 100;
+
+    private static final long PERIOD_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    private final AtomicLong sampledOutCount = new AtomicLong();
+    private final AtomicLong rateLimitedCount = new AtomicLong();
+
+    private volatile Rules rules = Rules.NONE;
+
+    /**
+     * Applies the sampling and rate limits of a config. Rate limits start over with full buckets.
+     */
+    void configure(NRConfig config) {
+        rules = new Rules(config);
+    }
+
+    /**
+     * @param eventType event type
+     * @return DROPPED if the event must be dropped, KEPT if it is kept as is,
+     * otherwise the sample rate it was kept with
+     */
+    double admit(String eventType) {
+        Rules r = rules;
+        if (r.isEmpty()) {
+            return KEPT;
+        }
+
+        double sampleRate = r.sampleRate(eventType);
+        if (sampleRate < KEPT && random.get().nextDouble() >= sampleRate) {
+            sampledOutCount.incrementAndGet();
+            return DROPPED;
+        }
+
+        TokenBucket bucket = r.bucket(eventType);
+        if (null != bucket && !bucket.tryAcquire()) {
+            rateLimitedCount.incrementAndGet();
+            return DROPPED;
+        }
+
+        return sampleRate;
+    }
+
+    /**
+     * @return attributes with the sample rate added, as a copy so the caller's map is left alone
+     */
+    static Map<String, Object> withSampleRate(Map<String, Object> eventAttributes, double sampleRate) {
+        Map<String, Object> sampled = null == eventAttributes ? new HashMap<String, Object>(2) : new HashMap<>(eventAttributes);
+        sampled.put(SAMPLE_RATE_ATTRIBUTE, sampleRate);
+        return sampled;
+    }
+
+    long getSampledOutCount() {
+        return sampledOutCount.get();
+    }
+
+    long getRateLimitedCount() {
+        return rateLimitedCount.get();
+    }
+
+    /**
+     * Sampling and rate limits of one config, with the buckets in use.
+     */
+    private static final class Rules {
+        static final Rules NONE = new Rules();
+
+        private final Map<String, Double> sampleRates;
+        private final Map<String, Integer> rateLimits;
+        private final int defaultRateLimit;
+
+        private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+        /* shared by event types beyond MAX_EVENT_TYPES */
+        private final TokenBucket overflowBucket;
+
+        private Rules() {
+            this.sampleRates = new HashMap<>();
+            this.rateLimits = new HashMap<>();
+            this.defaultRateLimit = 0;
+            this.overflowBucket = null;
+        }
+
+        Rules(NRConfig config) {
+            this.sampleRates = config.getEventSampleRates();
+            this.rateLimits = config.getEventRateLimits();
+            this.defaultRateLimit = config.getDefaultEventRateLimit();
+            this.overflowBucket = defaultRateLimit > 0 ? new TokenBucket(defaultRateLimit, PERIOD_NANOS) : null;
+
+            for (Map.Entry<String, Integer> limit : rateLimits.entrySet()) {
+                buckets.put(limit.getKey(), new TokenBucket(limit.getValue(), PERIOD_NANOS));
+            }
+        }
+
+        boolean isEmpty() {
+            return sampleRates.isEmpty() && rateLimits.isEmpty() && defaultRateLimit == 0;
+        }
+
+        double sampleRate(String eventType) {
+            Double sampleRate = sampleRates.get(eventType);
+            return null == sampleRate ? KEPT : sampleRate;
+        }
+
+        TokenBucket bucket(String eventType) {
+            TokenBucket bucket = buckets.get(eventType);
+            if (null != bucket || defaultRateLimit == 0) {
+                return bucket;
+            }
+
+            if (buckets.size() - rateLimits.size() >= MAX_EVENT_TYPES) {
+                return overflowBucket;
+            }
+
+            TokenBucket created = new TokenBucket(defaultRateLimit, PERIOD_NANOS);
+            bucket = buckets.putIfAbsent(eventType, created);
+            return null == bucket ? created : bucket;
+        }
+    }
+}
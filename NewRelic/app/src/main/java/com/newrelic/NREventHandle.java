@@ -0,0 +1,42 @@
+package com.newrelic;
+
+import java.util.Map;
+
+/**
+ * Pre-validated custom event type, created by {@link NRSdk#eventType(String)}.
+ * The event type is checked once, so recording through a handle does no string
+ * processing on the calling thread. Handles are immutable and can be shared between threads.
+ */
+public final class NREventHandle {
+
+    final String eventType;
+
+    NREventHandle(String eventType) {
+        this.eventType = eventType;
+    }
+
+    /**
+     * Records a custom event of this type.
+     *
+     * @param eventName       Optional. Use this parameter to name the event.
+     * @param eventAttributes Optional. A map that includes a list of attributes
+     * @return true if the event is recorded successfully, or false if not.
+     */
+    public boolean record(String eventName, Map<String, Object> eventAttributes) {
+        return NRSdk.record(this, eventName, eventAttributes);
+    }
+
+    /**
+     * Records a custom event of this type.
+     *
+     * @param eventAttributes Optional. A map that includes a list of attributes
+     * @return true if the event is recorded successfully, or false if not.
+     */
+    public boolean record(Map<String, Object> eventAttributes) {
+        return NRSdk.record(this, null, eventAttributes);
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+}
@@ -0,0 +1,153 @@
+package com.newrelic;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deduplicates recordHandledException() calls within a time window.
+ * Exceptions are fingerprinted by class and top stack frames. The first occurrence of a fingerprint
+ * is forwarded as is, repeats are only counted. At the end of the window the first occurrence is
+ * forwarded once more with an "occurrenceCount" attribute holding the number of repeats.
+ */
+class NRExceptionDedup implements Runnable {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRExceptionDedup.class.getSimpleName());
+
+    static final String OCCURRENCE_COUNT = "occurrenceCount";
+
+    /* stack frames hashed into a fingerprint */
+    static final int MAX_FRAMES = 8;
+
+    /* bound on fingerprints per window, exceptions beyond it are forwarded one by one */
+    static final int MAX_FINGERPRINTS = 256;
+
+    private final NRInstance instance;
+
+    // fingerprint -> first occurrence in the current window
+    private final ConcurrentHashMap<Long, Occurrence> occurrences = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private ScheduledFuture<?> flushTask;
+
+    NRExceptionDedup(NRInstance instance) {
+        this.instance = instance;
+    }
+
+    /**
+     * Starts closing windows periodically.
+     *
+     * @param windowMs window length in milliseconds
+     */
+    synchronized void start(long windowMs) {
+        if (null == flushTask) {
+            flushTask = NRScheduler.scheduleAtFixedRate("NRExceptionDedup.flush()", this, windowMs);
+        }
+    }
+
+    /**
+     * Hashes the exception class and its top MAX_FRAMES stack frames.
+     * Messages are left out, they often hold ids or timestamps which differ between repeats.
+     */
+    static long fingerprint(Throwable throwable) {
+        return fingerprint(throwable.getClass().getName(), throwable.getStackTrace());
+    }
+
+    /**
+     * Hashes a class name and the top MAX_FRAMES frames of a stack trace.
+     */
+    static long fingerprint(String className, StackTraceElement[] frames) {
+        long hash = 1125899906842597L;
+        hash = 31 * hash + className.hashCode();
+
+        for (int i = 0, n = Math.min(frames.length, MAX_FRAMES); i < n; i++) {
+            StackTraceElement frame = frames[i];
+            hash = 31 * hash + frame.getClassName().hashCode();
+            hash = 31 * hash + frame.getMethodName().hashCode();
+            hash = 31 * hash + frame.getLineNumber();
+        }
+        return hash;
+    }
+
+    /**
+     * @return true if the exception should be forwarded now, false if it repeats one of this window
+     */
+    boolean admit(Exception exception, Map<String, Object> exceptionAttributes) {
+        Long fingerprint = fingerprint(exception);
+        Occurrence occurrence = occurrences.get(fingerprint);
+        if (null != occurrence) {
+            occurrence.repeats.incrementAndGet();
+            return false;
+        }
+
+        if (size.incrementAndGet() > MAX_FINGERPRINTS) {
+            size.decrementAndGet();
+            return true;
+        }
+
+        occurrence = occurrences.putIfAbsent(fingerprint, new Occurrence(exception, NRAttributes.encode(exceptionAttributes)));
+        if (null != occurrence) {
+            size.decrementAndGet();
+            occurrence.repeats.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return number of fingerprints seen in the current window
+     */
+    int size() {
+        return size.get();
+    }
+
+    @Override
+    public void run() {
+        flush();
+    }
+
+    /**
+     * Closes the current window, forwarding one exception per repeated fingerprint.
+     */
+    synchronized void flush() {
+        Iterator<Occurrence> it = occurrences.values().iterator();
+        while (it.hasNext()) {
+            Occurrence occurrence = it.next();
+            it.remove();
+            size.decrementAndGet();
+
+            long repeats = occurrence.repeats.get();
+            if (repeats > 0) {
+                flush(occurrence, repeats);
+            }
+        }
+    }
+
+    private void flush(Occurrence occurrence, long repeats) {
+        try {
+            Map<String, Object> attributes = null == occurrence.attributes
+                    ? new HashMap<String, Object>() : occurrence.attributes.toMap();
+            attributes.put(OCCURRENCE_COUNT, repeats);
+            instance.forwardHandledException(occurrence.exception, attributes);
+        } catch (Exception e) {
+            logger.error("error in flush()", e);
+        }
+    }
+
+    private static final class Occurrence {
+        final Exception exception;
+        /* attributes of the first occurrence, null if it had none */
+        final NRAttributes attributes;
+        final AtomicLong repeats = new AtomicLong();
+
+        Occurrence(Exception exception, NRAttributes attributes) {
+            this.exception = exception;
+            this.attributes = attributes;
+        }
+    }
+}
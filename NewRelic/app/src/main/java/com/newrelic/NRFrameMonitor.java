@@ -0,0 +1,321 @@
+package com.newrelic;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+import com.newrelic.utils.LogHistogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures main thread frame times with a Choreographer frame callback.
+ * A frame's time is the gap between two consecutive vsync timestamps.
+ * <p>
+ * The callback is only re-posted while the resumed activity draws: a draw listener on its decor view
+ * posts it, and a frame without a draw since the previous one stops it. So no vsync is requested
+ * while the app is idle or in the background, and the first frame after a pause is not measured.
+ * Until the first activity resumes after start(), and without an Application, it is re-posted every frame.
+ * <p>
+ * Frame times go to one LogHistogram, flushed as "FrameTime/p50", "/p90", "/p99" and "/max" metrics
+ * in the "NRSdk/Frames" category. Frames, slow frames and frozen frames are counted per interaction
+ * name, see setInteractionName(), until the interaction ends, and flushed as "Interaction/name/Frames",
+ * ".../SlowFrames" and ".../FrozenFrames". Recording a frame does not allocate.
+ */
+class NRFrameMonitor implements Choreographer.FrameCallback, ViewTreeObserver.OnDrawListener, Runnable {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRFrameMonitor.class.getSimpleName());
+
+    static final String METRIC_CATEGORY = "NRSdk/Frames";
+
+    /* more than one missed vsync at 60 Hz */
+    static final long SLOW_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(24);
+
+    /* same threshold as Android vitals */
+    static final long FROZEN_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(700);
+
+    /* longer gaps are pauses, e.g. while the app is in the background, not frames */
+    static final long MAX_FRAME_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    static final long MAX_FRAME_MICROS = TimeUnit.NANOSECONDS.toMicros(MAX_FRAME_NANOS);
+
+    /* bound on interaction names, frames of further names are counted as OTHER_INTERACTION */
+    static final int MAX_INTERACTIONS = 100;
+
+    static final String NO_INTERACTION = "{none}";
+    static final String OTHER_INTERACTION = "{other}";
+
+    private static final double[] PERCENTILES = {50, 90, 99};
+    private static final String[] PERCENTILE_NAMES = {"FrameTime/p50", "FrameTime/p90", "FrameTime/p99"};
+
+    private final NRInstance instance;
+    private final Application application;
+
+    private final LogHistogram frameTimes = new LogHistogram(MAX_FRAME_MICROS);
+
+    /* reused by the flush, only touched on the scheduler thread */
+    private final LogHistogram snapshot = new LogHistogram(MAX_FRAME_MICROS);
+
+    private final ConcurrentHashMap<String, Frames> interactions = new ConcurrentHashMap<>();
+
+    /* counts of frames outside a named interaction */
+    private final Frames noInteraction;
+
+    /* counts of the interaction named last */
+    private volatile Frames current;
+
+    // only touched on the main thread
+    /* vsync time of the previous frame, 0 if not measuring */
+    private long lastFrameNanos;
+    /* the frame callback is posted */
+    private boolean posted;
+    /* a draw happened since the previous frame */
+    private boolean drawn;
+    /* decor view of the resumed activity, carries this draw listener */
+    private View observed;
+    /* the last activity was paused and no other one resumed */
+    private boolean paused;
+
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * @param application to follow the resumed activity, may be null
+     */
+    NRFrameMonitor(NRInstance instance, Application application) {
+        this.instance = instance;
+        this.application = application;
+        this.noInteraction = frames(NO_INTERACTION);
+        this.current = noInteraction;
+    }
+
+    /**
+     * Starts monitoring frames on the main thread and flushing periodically.
+     *
+     * @param flushIntervalMs flush interval in milliseconds
+     */
+    synchronized void start(long flushIntervalMs) {
+        if (null != flushTask) {
+            return;
+        }
+
+        flushTask = NRScheduler.scheduleAtFixedRate("NRFrameMonitor.flush()", this, flushIntervalMs);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                if (null != application) {
+                    application.registerActivityLifecycleCallbacks(new ActivityObserver());
+                }
+                // an activity may be resumed already, measure until it pauses
+                post();
+            }
+        });
+    }
+
+    /**
+     * Counts the following frames for this interaction name.
+     */
+    void setInteractionName(String interactionName) {
+        current = frames(interactionName);
+    }
+
+    /**
+     * Counts the following frames outside of any interaction.
+     */
+    void onInteractionEnded() {
+        current = noInteraction;
+    }
+
+    private Frames frames(String interactionName) {
+        Frames frames = interactions.get(interactionName);
+        if (null != frames) {
+            return frames;
+        }
+
+        if (interactions.size() >= MAX_INTERACTIONS) {
+            interactionName = OTHER_INTERACTION;
+            frames = interactions.get(interactionName);
+            if (null != frames) {
+                return frames;
+            }
+        }
+
+        Frames created = new Frames("Interaction/" + interactionName);
+        frames = interactions.putIfAbsent(interactionName, created);
+        return null == frames ? created : frames;
+    }
+
+    /**
+     * Posts the frame callback if not posted, the next frame starts a new measurement. Main thread only.
+     */
+    private void post() {
+        if (!posted) {
+            posted = true;
+            lastFrameNanos = 0;
+            // Choreographer.getInstance() is per thread, this needs the main thread's
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void onDraw() {
+        drawn = true;
+        post();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        long last = lastFrameNanos;
+        lastFrameNanos = frameTimeNanos;
+
+        // without a resumed activity to observe, keep measuring unless the app went to the background
+        if (drawn || (null == observed && !paused)) {
+            drawn = false;
+            Choreographer.getInstance().postFrameCallback(this);
+        } else {
+            posted = false;
+        }
+
+        if (last == 0) {
+            return;
+        }
+
+        long frameNanos = frameTimeNanos - last;
+        if (frameNanos <= 0 || frameNanos > MAX_FRAME_NANOS) {
+            return;
+        }
+
+        frameTimes.record(TimeUnit.NANOSECONDS.toMicros(frameNanos));
+
+        Frames frames = current;
+        frames.frames.incrementAndGet();
+        if (frameNanos >= FROZEN_FRAME_NANOS) {
+            frames.frozen.incrementAndGet();
+        } else if (frameNanos >= SLOW_FRAME_NANOS) {
+            frames.slow.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void run() {
+        flush();
+    }
+
+    /**
+     * Forwards the frames counted since the last flush to the agent.
+     */
+    synchronized void flush() {
+        try {
+            LogHistogram h = frameTimes.drainTo(snapshot);
+            if (h.getCount() > 0) {
+                for (int i = 0; i < PERCENTILES.length; i++) {
+                    recordFrameTime(PERCENTILE_NAMES[i], h.getValueAtPercentile(PERCENTILES[i]));
+                }
+                recordFrameTime("FrameTime/max", h.getMax());
+            }
+        } catch (Exception e) {
+            logger.error("error in flush()", e);
+        }
+
+        for (Map.Entry<String, Frames> entry : interactions.entrySet()) {
+            try {
+                Frames frames = entry.getValue();
+                recordCount(frames.name + "/Frames", frames.frames.getAndSet(0));
+                recordCount(frames.name + "/SlowFrames", frames.slow.getAndSet(0));
+                recordCount(frames.name + "/FrozenFrames", frames.frozen.getAndSet(0));
+            } catch (Exception e) {
+                logger.error("error in flush()", e);
+            }
+        }
+    }
+
+    private void recordFrameTime(String name, long micros) {
+        double seconds = micros / 1e6;
+        instance.recordMetric(name, METRIC_CATEGORY, 1, seconds, seconds, MetricUnit.OPERATIONS, MetricUnit.SECONDS);
+    }
+
+    private void recordCount(String name, long count) {
+        if (count > 0) {
+            instance.recordMetric(name, METRIC_CATEGORY, (int) Math.min(Integer.MAX_VALUE, count),
+                    count, count, MetricUnit.OPERATIONS, MetricUnit.OPERATIONS);
+        }
+    }
+
+    /**
+     * Moves the draw listener to the decor view of the resumed activity. Called on the main thread.
+     */
+    private final class ActivityObserver implements Application.ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            stopObserving();
+            paused = false;
+            try {
+                View decorView = activity.getWindow().getDecorView();
+                decorView.getViewTreeObserver().addOnDrawListener(NRFrameMonitor.this);
+                observed = decorView;
+            } catch (Exception e) {
+                logger.error("error in onActivityResumed()", e);
+            }
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+            stopObserving();
+            paused = true;
+        }
+
+        private void stopObserving() {
+            View view = observed;
+            observed = null;
+            if (null != view) {
+                ViewTreeObserver observer = view.getViewTreeObserver();
+                if (observer.isAlive()) {
+                    observer.removeOnDrawListener(NRFrameMonitor.this);
+                }
+            }
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+
+    private static final class Frames {
+        /* "Interaction/name", prefix of the metric names */
+        final String name;
+        final AtomicLong frames = new AtomicLong();
+        final AtomicLong slow = new AtomicLong();
+        final AtomicLong frozen = new AtomicLong();
+
+        Frames(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.newrelic;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adjusts the agent's event buffer time to the observed event rate.
+ * <p>
+ * Picks the longest buffer time (fewest radio wake-ups) at which the expected events per
+ * harvest still fit the event pool with some headroom. So an idle app buffers for up to
+ * MAX_BUFFER_TIME, a busy one harvests more often instead of overflowing the pool.
+ * The pool is left at its configured or default size: it is a cap, not a preallocation, so a
+ * smaller one saves no memory and would drop bursts arriving between two ticks.
+ * Decisions are recorded as metrics in the "NRSdk/Harvest" category.
+ */
+class NRHarvestTuner implements Runnable {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRHarvestTuner.class.getSimpleName());
+
+    static final String METRIC_CATEGORY = "NRSdk/Harvest";
+
+    /* bounds accepted by the agent, see NRSdk.setMaxEventBufferTime() */
+    static final int MIN_BUFFER_TIME = 60;
+    static final int MAX_BUFFER_TIME = 600;
+
+    /* event pool size of the agent unless set with NRSdk.setMaxEventPoolSize() */
+    static final int DEFAULT_POOL_SIZE = 1000;
+
+    /* how often the rate is sampled */
+    static final long TICK_MS = 15000;
+
+    /* share of the pool expected to be used, the rest absorbs bursts */
+    private static final double TARGET_FILL = 0.8;
+
+    /* weight of the latest rate sample in the moving average */
+    private static final double SMOOTHING = 0.3;
+
+    /* relative change below which the current settings are kept */
+    private static final double HYSTERESIS = 0.1;
+
+    private final NRInstance instance;
+
+    private final AtomicLong events = new AtomicLong();
+
+    private volatile int poolSize = DEFAULT_POOL_SIZE;
+
+    /* state below is only touched on the scheduler thread */
+    private long lastTickNanos = -1;
+    private double eventsPerSecond = -1;
+    private int bufferTime = -1;
+
+    private ScheduledFuture<?> tickTask;
+
+    NRHarvestTuner(NRInstance instance) {
+        this.instance = instance;
+    }
+
+    synchronized void start() {
+        if (null == tickTask) {
+            tickTask = NRScheduler.scheduleAtFixedRate("NRHarvestTuner.tick()", this, TICK_MS);
+        }
+    }
+
+    /**
+     * Counts one event going to the agent's event pool.
+     */
+    void onEvent() {
+        events.incrementAndGet();
+    }
+
+    /**
+     * Follows the event pool size set through NRSdk.setMaxEventPoolSize().
+     */
+    void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    @Override
+    public void run() {
+        tick(System.nanoTime());
+    }
+
+    synchronized void tick(long nowNanos) {
+        long count = events.getAndSet(0);
+        if (lastTickNanos < 0) {
+            lastTickNanos = nowNanos;
+            return;
+        }
+
+        double seconds = (nowNanos - lastTickNanos) / 1e9;
+        lastTickNanos = nowNanos;
+        if (seconds <= 0) {
+            return;
+        }
+
+        double rate = count / seconds;
+        eventsPerSecond = eventsPerSecond < 0 ? rate : SMOOTHING * rate + (1 - SMOOTHING) * eventsPerSecond;
+
+        int pool = poolSize;
+        int targetBufferTime = bufferTimeFor(eventsPerSecond, pool);
+
+        // nothing to do once pinned at the target, e.g. at MIN_BUFFER_TIME while still overflowing
+        if (targetBufferTime == bufferTime) {
+            return;
+        }
+
+        // react right away to a pool about to overflow, otherwise only to significant changes
+        boolean overflowing = eventsPerSecond * bufferTime > TARGET_FILL * pool;
+        if (bufferTime < 0 || overflowing || changed(bufferTime, targetBufferTime)) {
+            apply(targetBufferTime);
+        }
+    }
+
+    static int bufferTimeFor(double eventsPerSecond, int poolSize) {
+        if (eventsPerSecond <= 0) {
+            return MAX_BUFFER_TIME;
+        }
+        double seconds = TARGET_FILL * poolSize / eventsPerSecond;
+        return (int) Math.max(MIN_BUFFER_TIME, Math.min(MAX_BUFFER_TIME, seconds));
+    }
+
+    private static boolean changed(int current, int target) {
+        return Math.abs(target - current) > HYSTERESIS * current;
+    }
+
+    private void apply(int targetBufferTime) {
+        try {
+            instance.setMaxEventBufferTime(targetBufferTime);
+            bufferTime = targetBufferTime;
+
+            instance.recordMetric("EventRate", METRIC_CATEGORY, eventsPerSecond);
+            instance.recordMetric("BufferTime", METRIC_CATEGORY, bufferTime, MetricUnit.OPERATIONS, MetricUnit.SECONDS);
+
+            logger.debug("harvest tuned, buffer time {} s", bufferTime);
+        } catch (Exception e) {
+            logger.error("error in tick()", e);
+        }
+    }
+
+    int getBufferTime() {
+        return bufferTime;
+    }
+
+    int getPoolSize() {
+        return poolSize;
+    }
+}
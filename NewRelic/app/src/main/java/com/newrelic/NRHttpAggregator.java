@@ -0,0 +1,154 @@
+package com.newrelic;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+import com.newrelic.utils.StripedStats;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates HTTP transactions per method and route template (see RouteNormalizer) and flushes
+ * them periodically as metrics in the "NRSdk/Http" category, named "METHOD route/ResponseTime",
+ * ".../Errors", ".../BytesSent" and ".../BytesReceived".
+ */
+class NRHttpAggregator implements Runnable {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRHttpAggregator.class.getSimpleName());
+
+    static final String METRIC_CATEGORY = "NRSdk/Http";
+
+    /* bound on aggregated routes, the rest is aggregated as OTHER_ROUTE */
+    static final int MAX_ROUTES = 500;
+
+    static final String OTHER_ROUTE = "{other}";
+
+    private final NRInstance instance;
+
+    // method -> route -> stats
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Route>> routes = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /* reused by the flush, only touched on the scheduler thread */
+    private final StripedStats.Snapshot snapshot = new StripedStats.Snapshot();
+
+    private ScheduledFuture<?> flushTask;
+
+    NRHttpAggregator(NRInstance instance) {
+        this.instance = instance;
+    }
+
+    synchronized void start(long flushIntervalMs) {
+        if (null == flushTask) {
+            flushTask = NRScheduler.scheduleAtFixedRate("NRHttpAggregator.flush()", this, flushIntervalMs);
+        }
+    }
+
+    /**
+     * @return true for an error response, status code 400 and above, or none at all
+     */
+    static boolean isError(int statusCode) {
+        return statusCode >= 400 || statusCode <= 0;
+    }
+
+    /**
+     * @param template route template of the URL, see RouteNormalizer
+     */
+    void record(String template, String httpMethod, int statusCode, long startTime, long endTime, long bytesSent, long bytesReceived) {
+        Route route = route(httpMethod, template);
+        route.latency.record(Math.max(0, endTime - startTime) / 1000.0);
+        if (isError(statusCode)) {
+            route.errors.incrementAndGet();
+        }
+        if (bytesSent > 0) {
+            route.bytesSent.addAndGet(bytesSent);
+        }
+        if (bytesReceived > 0) {
+            route.bytesReceived.addAndGet(bytesReceived);
+        }
+    }
+
+    private Route route(String httpMethod, String template) {
+        ConcurrentHashMap<String, Route> methodRoutes = routes.get(httpMethod);
+        if (null == methodRoutes) {
+            ConcurrentHashMap<String, Route> created = new ConcurrentHashMap<>();
+            methodRoutes = routes.putIfAbsent(httpMethod, created);
+            if (null == methodRoutes) {
+                methodRoutes = created;
+            }
+        }
+
+        Route route = methodRoutes.get(template);
+        if (null != route) {
+            return route;
+        }
+
+        if (size.incrementAndGet() > MAX_ROUTES) {
+            size.decrementAndGet();
+            template = OTHER_ROUTE;
+            route = methodRoutes.get(template);
+            if (null != route) {
+                return route;
+            }
+        }
+
+        Route created = new Route(httpMethod + " " + template);
+        route = methodRoutes.putIfAbsent(template, created);
+        return null == route ? created : route;
+    }
+
+    @Override
+    public void run() {
+        flush();
+    }
+
+    /**
+     * Forwards everything aggregated since the last flush to the agent.
+     */
+    synchronized void flush() {
+        for (Map.Entry<String, ConcurrentHashMap<String, Route>> methodRoutes : routes.entrySet()) {
+            for (Route route : methodRoutes.getValue().values()) {
+                flush(route, route.latency.drainTo(snapshot));
+            }
+        }
+    }
+
+    private void flush(Route route, StripedStats.Snapshot s) {
+        // counters of a transaction recorded while its latency was drained carry over to the next flush
+        if (s.count == 0) {
+            return;
+        }
+
+        long errors = route.errors.getAndSet(0);
+        long bytesSent = route.bytesSent.getAndSet(0);
+        long bytesReceived = route.bytesReceived.getAndSet(0);
+
+        try {
+            int count = (int) Math.min(Integer.MAX_VALUE, s.count);
+            instance.recordMetric(route.name + "/ResponseTime", METRIC_CATEGORY, count, s.sum, s.sum, MetricUnit.OPERATIONS, MetricUnit.SECONDS);
+            if (errors > 0) {
+                instance.recordMetric(route.name + "/Errors", METRIC_CATEGORY, (int) errors, errors, errors, MetricUnit.OPERATIONS, MetricUnit.OPERATIONS);
+            }
+            instance.recordMetric(route.name + "/BytesSent", METRIC_CATEGORY, count, bytesSent, bytesSent, MetricUnit.OPERATIONS, MetricUnit.BYTES);
+            instance.recordMetric(route.name + "/BytesReceived", METRIC_CATEGORY, count, bytesReceived, bytesReceived, MetricUnit.OPERATIONS, MetricUnit.BYTES);
+        } catch (Exception e) {
+            logger.error("error in flush()", e);
+        }
+    }
+
+    private static final class Route {
+        /* "METHOD route", prefix of the metric names */
+        final String name;
+        final StripedStats latency = new StripedStats();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong bytesSent = new AtomicLong();
+        final AtomicLong bytesReceived = new AtomicLong();
+
+        Route(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -1,68 +1,276 @@
 package com.newrelic;
 
 import android.app.Application;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
 
 import com.newrelic.agent.android.metric.MetricUnit;
+import com.newrelic.utils.RouteNormalizer;
 import com.newrelic.utils.Utils;
-import com.newrelic.agent.android.NewRelic;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class NRInstance {
 
     // logger
     private static final NRLog logger = NRLog.getLogger(NRInstance.class.getSimpleName());
 
-    public static NRInstance instance;
+    /* start anyway if no frame got drawn by then, e.g. process started without UI */
+    private static final long FIRST_FRAME_TIMEOUT_MS = 5000;
+
+    /* number of URLs whose route template is cached */
+    private static final int ROUTE_CACHE_SIZE = 512;
+
+    private static volatile NRInstance instance;
 
     /* Application context */
     private final Context context;
 
-    /* config */
-    private NRConfig config;
+    /* config, an immutable snapshot swapped atomically on updates */
+    private final AtomicReference<NRConfig> config;
+
+    /* where agent calls go */
+    private final NRBackend backend;
+
+    /* backend for events and breadcrumbs, NRNoopBackend if analytics events are disabled */
+    private volatile NRBackend events;
+
+    /* backend for interactions, NRNoopBackend if interaction tracking is disabled */
+    private volatile NRBackend interactions;
+
+    private volatile boolean initialized = false;
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    /* time spent in the agent's start(), -1 until started */
+    private volatile long agentStartNanos = -1;
+
+    /* per event type sampling and rate limits */
+    private final NREventAdmission eventAdmission = new NREventAdmission();
+
+    /* recordMetric() pre-aggregation, null unless enabled in NRConfig */
+    private volatile NRMetricAggregator metricAggregator;
+
+    /* event buffer time and pool size tuning, null unless enabled in NRConfig */
+    private volatile NRHarvestTuner harvestTuner;
+
+    /* noticeHttpTransaction() aggregation per route, null unless enabled in NRConfig */
+    private volatile NRHttpAggregator httpAggregator;
 
-    private boolean initialized = false;
+    /* latency percentiles per route and span, null unless enabled in NRConfig */
+    private volatile NRLatencyHistograms latencyHistograms;
+
+    /* URL to route template, shared by HTTP aggregation and latency histograms */
+    private final RouteNormalizer routeNormalizer = new RouteNormalizer(ROUTE_CACHE_SIZE);
+
+    /* main thread frame times, null unless enabled in NRConfig */
+    private volatile NRFrameMonitor frameMonitor;
+
+    /* stack sampling of profiled interactions, null unless enabled in NRConfig */
+    private volatile NRProfiler profiler;
+
+    /* main thread stall detection, null unless enabled in NRConfig */
+    private volatile NRStallWatchdog stallWatchdog;
+
+    /* recent breadcrumbs kept until an exception is reported, null unless enabled in NRConfig */
+    private volatile NRBreadcrumbRing breadcrumbRing;
+
+    /* recordHandledException() deduplication, null unless enabled in NRConfig */
+    private volatile NRExceptionDedup exceptionDedup;
+
+    /* crash-safe copy of recorded events, null unless enabled in NRConfig */
+    private volatile NRSpool eventSpool;
 
 
     /**
      * Gets static instance of BNR Instance, creates if needed.
+     * The agent is not started until {@link #start(Runnable)} is called.
+     * Once created this is lock-free, a changed config replaces the current snapshot.
      *
      * @param context Context
      * @param config  NRConfig
      * @return NRInstance
      */
     public static NRInstance getInstance(Context context, NRConfig config)  {
+        return getInstance(context, config, NRAgentBackend.INSTANCE);
+    }
 
-        synchronized (NRInstance.class) {
-            if (null == instance) {
-                instance = new NRInstance(context, config);
+    /**
+     * Gets static instance, creating it with the given backend if needed.
+     *
+     * @param context Context, only required by NRAgentBackend
+     * @param config  NRConfig
+     * @param backend NRBackend
+     * @return NRInstance
+     */
+    static NRInstance getInstance(Context context, NRConfig config, NRBackend backend)  {
+        NRInstance current = instance;
+        if (null == current) {
+            synchronized (NRInstance.class) {
+                current = instance;
+                if (null == current) {
+                    current = new NRInstance(context, config.snapshot(), backend);
+                    instance = current;
+                    return current;
+                }
             }
         }
 
         // Override config
-        instance.config = config;
+        current.updateConfig(config);
 
-        return instance;
+        return current;
     }
 
     static NRInstance getInstance() {
         return instance;
     }
 
-    private NRInstance(Context context, NRConfig config)  {
+    /**
+     * Forgets the static instance, see NRSdk.reset().
+     */
+    static void reset() {
+        synchronized (NRInstance.class) {
+            instance = null;
+        }
+    }
+
+    /**
+     * Package-private so tests can run components against their own instance, use getInstance() otherwise.
+     */
+    NRInstance(Context context, NRConfig config, NRBackend backend)  {
+        this.config = new AtomicReference<>(config);
+        this.backend = new NRStatsBackend(backend, NRStats.INSTANCE);
+        // the agent needs the Application context, other backends run without one
+        this.context = backend == NRAgentBackend.INSTANCE ? applicationContext(context) : context;
+        applyFeatures(config);
+    }
 
+    private static Context applicationContext(Context context) {
         Context ctx = context.getApplicationContext(); // Always grab Application Context only
         // Ensure you got Application context
         if (!(ctx instanceof Application)) {
             throw new IllegalStateException("Context failed to cast to ApplicationContext");
         }
+        return ctx;
+    }
 
-        this.config = config;
-        this.context = context;
-        init(this);
+    /**
+     * Routes disabled features to NRNoopBackend.
+     */
+    private void applyFeatures(NRConfig config) {
+        events = config.isAnalyticsEvents() ? backend : NRNoopBackend.INSTANCE;
+        interactions = config.isInteractionTracking() ? backend : NRNoopBackend.INSTANCE;
+        eventAdmission.configure(config);
+    }
+
+    /**
+     * Starts the agent according to the configured startup mode. Only the first call has an effect.
+     *
+     * @param onStarted called on the starting thread once init() has run, successful or not
+     */
+    void start(final Runnable onStarted) {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                init(NRInstance.this);
+                onStarted.run();
+            }
+        };
+
+        switch (getConfig().getStartupMode()) {
+            case BACKGROUND:
+                startInBackground(task);
+                break;
+
+            case AFTER_FIRST_FRAME:
+                startAfterFirstFrame(task);
+                break;
+
+            default:
+                task.run();
+                break;
+        }
+    }
+
+    /**
+     * @return true once start() has been called
+     */
+    boolean isStarted() {
+        return started.get();
+    }
+
+    /**
+     * @return current config snapshot
+     */
+    NRConfig getConfig() {
+        return config.get();
+    }
+
+    /**
+     * Replaces the config snapshot if the given config holds different values.
+     * Settings only read when the agent starts (token, startup mode, ...) are not affected.
+     * Synchronized, so the published snapshot and the feature routing always come from the same update.
+     *
+     * @param update NRConfig
+     */
+    synchronized void updateConfig(NRConfig update) {
+        NRConfig current = config.get();
+        if (!current.isSameAs(update)) {
+            NRConfig snapshot = update.snapshot();
+            config.set(snapshot);
+            applyFeatures(snapshot);
+        }
+    }
+
+    private static void startInBackground(Runnable task) {
+        Thread thread = new Thread(task, "NRSdk-startup");
+        thread.start();
+    }
+
+    /**
+     * Waits for the first frame to be drawn, then starts the agent on a background thread.
+     */
+    private static void startAfterFirstFrame(final Runnable task) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        final AtomicBoolean once = new AtomicBoolean(false);
+
+        final Runnable startOnce = new Runnable() {
+            @Override
+            public void run() {
+                if (once.compareAndSet(false, true)) {
+                    startInBackground(task);
+                }
+            }
+        };
+
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        // runs before traversal, so post to start after the frame is drawn
+                        handler.post(startOnce);
+                    }
+                });
+            }
+        });
+        handler.postDelayed(startOnce, FIRST_FRAME_TIMEOUT_MS);
     }
 
     private void init(NRInstance self) {
@@ -73,35 +281,205 @@ public class NRInstance {
         }
 
         // go about your business set things up!
+        NRConfig config = self.getConfig();
+        long startNanos = System.nanoTime();
         try {
 
-            NewRelic.withApplicationToken(self.config.newRelicToken)
-                    .withDefaultInteractions(self.config.isDefaultInteractions())
-                    .withCrashReportingEnabled(self.config.isCrashReportingEnabled())
-                    .withLoggingEnabled(self.config.isLoggingEnabled())
-                    .withAnalyticsEvents(self.config.isAnalyticsEvents())
-                    .withInteractionTracing(self.config.isInteractionTracking())
-                    .start(this.context);
+            backend.start(this.context, config);
 
             initialized = true;
+            agentStartNanos = System.nanoTime() - startNanos;
+
+            if (config.isMetricAggregation()) {
+                NRMetricAggregator aggregator = new NRMetricAggregator(self);
+                aggregator.start(TimeUnit.SECONDS.toMillis(config.getMetricFlushInterval()));
+                metricAggregator = aggregator;
+            }
+
+            if (config.isHttpAggregation()) {
+                NRHttpAggregator aggregator = new NRHttpAggregator(self);
+                aggregator.start(TimeUnit.SECONDS.toMillis(config.getMetricFlushInterval()));
+                httpAggregator = aggregator;
+            }
 
-            logger.info("NRSdk initialized");
+            if (config.isLatencyHistograms()) {
+                NRLatencyHistograms histograms = new NRLatencyHistograms(self);
+                histograms.start(TimeUnit.SECONDS.toMillis(config.getLatencyFlushInterval()));
+                latencyHistograms = histograms;
+            }
+
+            if (config.getBreadcrumbBufferSize() > 0) {
+                NRBreadcrumbRing ring = new NRBreadcrumbRing(config.getBreadcrumbBufferSize());
+                if (config.isCrashReportingEnabled()) {
+                    flushOnCrash(self, ring);
+                }
+                breadcrumbRing = ring;
+            }
+
+            if (config.getExceptionDedupWindow() > 0) {
+                NRExceptionDedup dedup = new NRExceptionDedup(self);
+                dedup.start(TimeUnit.SECONDS.toMillis(config.getExceptionDedupWindow()));
+                exceptionDedup = dedup;
+            }
+
+            if (config.isFrameMonitor()) {
+                NRFrameMonitor monitor = new NRFrameMonitor(self, context instanceof Application ? (Application) context : null);
+                monitor.start(TimeUnit.SECONDS.toMillis(config.getMetricFlushInterval()));
+                frameMonitor = monitor;
+            }
+
+            if (config.getStallThreshold() > 0) {
+                NRStallWatchdog watchdog = new NRStallWatchdog(self, config.getStallThreshold());
+                watchdog.start(TimeUnit.SECONDS.toMillis(config.getMetricFlushInterval()));
+                stallWatchdog = watchdog;
+            }
+
+            if (!config.getProfiledInteractions().isEmpty()) {
+                profiler = new NRProfiler(self, config.getProfiledInteractions(), config.getProfilerSampleInterval());
+            }
+
+            if (config.isSdkStatsReporting()) {
+                new NRStatsReporter(self, NRStats.INSTANCE).start(TimeUnit.SECONDS.toMillis(config.getMetricFlushInterval()));
+            }
+
+            if (config.isAdaptiveHarvest()) {
+                NRHarvestTuner tuner = new NRHarvestTuner(self);
+                tuner.start();
+                harvestTuner = tuner;
+            }
+
+            if (config.getEventSpoolSize() > 0) {
+                startSpool(config.getEventSpoolSize() * 1024);
+            }
+
+            logger.info("NRSdk initialized in {} ms", TimeUnit.NANOSECONDS.toMillis(agentStartNanos));
 
         } catch (Exception e) {
-            logger.error("error in init()", e.toString());
+            logger.error("error in init()", e);
+        }
+    }
+
+    /**
+     * Chains an uncaught exception handler in front of the agent's crash handler,
+     * so buffered breadcrumbs are recorded before the crash is.
+     */
+    private static void flushOnCrash(final NRInstance self, final NRBreadcrumbRing ring) {
+        final Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable throwable) {
+                try {
+                    ring.flush(self);
+                } catch (Throwable t) {
+                    logger.error("error in uncaughtException()", t);
+                }
+
+                if (null != previous) {
+                    previous.uncaughtException(thread, throwable);
+                }
+            }
+        });
+    }
+
+    /**
+     * Recovers events spooled by a previous process in the background, then keeps spooling.
+     * Spooled events are retired when the app goes to the background, the agent harvests then.
+     */
+    private void startSpool(int maxSize) {
+        if (null == context) {
+            logger.error("error in startSpool()", "no Context to locate the spool directory");
+            return;
         }
+
+        final NRSpool spool = new NRSpool(new File(context.getFilesDir(), NRSpool.DIRECTORY), maxSize);
+        eventSpool = spool;
+        NRScheduler.execute("NRSpool.open()", new Runnable() {
+            @Override
+            public void run() {
+                // recovered events go to the agent only, they are not spooled again
+                spool.open(events);
+                spool.start();
+            }
+        });
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level == TRIM_MEMORY_UI_HIDDEN) {
+                    spool.onBackground();
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+            }
+        });
     }
 
-    private boolean isInitialized() {
+    boolean isInitialized() {
         return initialized;
     }
 
+    /**
+     * @return false if analytics events are disabled, events are then dropped without an agent call
+     */
+    boolean isAnalyticsEvents() {
+        return events != NRNoopBackend.INSTANCE;
+    }
+
+    boolean isAggregatingMetrics() {
+        return null != metricAggregator;
+    }
+
+    /**
+     * @return true if breadcrumbs are kept in the breadcrumb buffer instead of sent to the agent
+     */
+    boolean isBufferingBreadcrumbs() {
+        return null != breadcrumbRing;
+    }
+
+    /**
+     * @return true if a successful HTTP transaction is aggregated instead of sent to the agent
+     */
+    boolean isAggregatingHttp() {
+        return null != httpAggregator;
+    }
+
+    /**
+     * Records the duration of a closed NRSpan in the latency histograms, if enabled.
+     */
+    void recordSpanLatency(String name, long nanos) {
+        NRLatencyHistograms histograms = latencyHistograms;
+        if (null != histograms) {
+            histograms.record(NRLatencyHistograms.SPAN_PREFIX + name, nanos);
+        }
+    }
+
+    NREventAdmission getEventAdmission() {
+        return eventAdmission;
+    }
+
+    /**
+     * @return time spent in the agent's start() in nanoseconds, -1 if not started
+     */
+    long getAgentStartNanos() {
+        return agentStartNanos;
+    }
+
     /**
      * create a New Relic-monitored interaction / Start an interaction trace /Track a method as an interaction
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/start-interaction
      */
     String startInteraction(String actionName) {
-        return NewRelic.startInteraction(actionName);  // NewRelic.startInteraction("RefreshContacts");
+        String interactionID = interactions.startInteraction(actionName);
+        NRProfiler p = profiler;
+        if (null != p) {
+            p.onInteractionStarted(interactionID, actionName);
+        }
+        return interactionID;
     }
 
     /**
@@ -110,7 +488,15 @@ public class NRInstance {
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/end-interaction
      */
     void endInteraction(String interactionID) {
-        NewRelic.endInteraction(interactionID);
+        interactions.endInteraction(interactionID);
+        NRProfiler p = profiler;
+        if (null != p) {
+            p.onInteractionEnded(interactionID);
+        }
+        NRFrameMonitor monitor = frameMonitor;
+        if (null != monitor) {
+            monitor.onInteractionEnded();
+        }
     }
 
     /**
@@ -124,18 +510,42 @@ public class NRInstance {
      *                        You could use setInteractionName at the beginning of each onCreate() method to change the name.
      */
     void setInteractionName(String interactionName) {
-        //Rename the in-flight interaction
-        /*NewRelic.setInteractionName("Display MyCustomInteraction");*/
-        NewRelic.setInteractionName(interactionName);
+        interactions.setInteractionName(interactionName);
+        NRFrameMonitor monitor = frameMonitor;
+        if (null != monitor) {
+            monitor.setInteractionName(interactionName);
+        }
     }
 
     /**
      * Records a MobileBreadcrumb event, useful for crash analysis.
+     * With a breadcrumb buffer the breadcrumb is only kept until the next exception is reported.
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/recordbreadcrumb
      */
     boolean recordBreadcrumb(String eventName, Map<String, Object> eventAttributes) {
+        NRBreadcrumbRing ring = breadcrumbRing;
+        if (null != ring) {
+            ring.add(eventName, eventAttributes);
+            return true;
+        }
+        return forwardBreadcrumb(eventName, eventAttributes);
+    }
+
+    /**
+     * Records a MobileBreadcrumb event, bypassing the breadcrumb buffer.
+     */
+    boolean forwardBreadcrumb(String eventName, Map<String, Object> eventAttributes) {
+        NRHarvestTuner tuner = harvestTuner;
+        if (null != tuner) {
+            tuner.onEvent();
+        }
 
-        return NewRelic.recordBreadcrumb(eventName, eventAttributes);
+        boolean recorded = events.recordBreadcrumb(eventName, eventAttributes);
+        NRSpool spool = eventSpool;
+        if (recorded && null != spool) {
+            spool.appendBreadcrumb(eventName, eventAttributes);
+        }
+        return recorded;
     }
 
     /**
@@ -143,7 +553,17 @@ public class NRInstance {
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/recordcustomevent-android-sdk-api
      */
     boolean recordCustomEvent(String eventType, String eventName, Map<String, Object> eventAttributes) {
-        return NewRelic.recordCustomEvent(eventType, eventName, eventAttributes);
+        NRHarvestTuner tuner = harvestTuner;
+        if (null != tuner) {
+            tuner.onEvent();
+        }
+
+        boolean recorded = events.recordCustomEvent(eventType, eventName, eventAttributes);
+        NRSpool spool = eventSpool;
+        if (recorded && null != spool) {
+            spool.appendCustomEvent(eventType, eventName, eventAttributes);
+        }
+        return recorded;
     }
 
     /**
@@ -151,7 +571,7 @@ public class NRInstance {
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/crashnow-android-sdk-api
      */
     void crashNow() {
-        NewRelic.crashNow();
+        backend.crashNow(null);
     }
 
     /**
@@ -159,26 +579,38 @@ public class NRInstance {
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/crashnow-android-sdk-api
      */
     void crashNow(String message) {
-        NewRelic.crashNow(message);
+        backend.crashNow(message);
     }
 
     /**
      * ref -https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/currentsessionid-android-sdk-api
      */
     String currentSessionId() {
-        return NewRelic.currentSessionId();
+        return backend.currentSessionId();
     }
 
     /**
-     * Tracks networks requests.
+     * Tracks networks requests. The response body is expected to be cut to the capture limit already.
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/notice-http-transaction
      */
     void noticeHttpTransaction(String url, String httpMethod, int statusCode, long startTime, long endTime, long bytesSent, long bytesReceived, String responseBody) {
-        if (Utils.isEmptyOrNull(responseBody)) {
-            NewRelic.noticeHttpTransaction(url, httpMethod, statusCode, startTime, endTime, bytesSent, bytesReceived);
-        } else {
-            NewRelic.noticeHttpTransaction(url, httpMethod, statusCode, startTime, endTime, bytesSent, bytesReceived, responseBody);
+        NRHttpAggregator aggregator = httpAggregator;
+        NRLatencyHistograms histograms = latencyHistograms;
+        if (null != aggregator || null != histograms) {
+            String route = routeNormalizer.normalize(url);
+            if (null != histograms) {
+                histograms.record(NRLatencyHistograms.HTTP_PREFIX + httpMethod + " " + route,
+                        TimeUnit.MILLISECONDS.toNanos(Math.max(0, endTime - startTime)));
+            }
+
+            if (null != aggregator) {
+                aggregator.record(route, httpMethod, statusCode, startTime, endTime, bytesSent, bytesReceived);
+                if (!NRHttpAggregator.isError(statusCode)) {
+                    return;
+                }
+            }
         }
+        backend.noticeHttpTransaction(url, httpMethod, statusCode, startTime, endTime, bytesSent, bytesReceived, responseBody);
     }
 
     /**
@@ -186,10 +618,27 @@ public class NRInstance {
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/recordhandledexception-android-sdk-api
      */
     boolean recordHandledException(Exception exceptionToHandle, Map<String, Object> exceptionAttributes) {
+        NRExceptionDedup dedup = exceptionDedup;
+        if (null != dedup && !dedup.admit(exceptionToHandle, exceptionAttributes)) {
+            // counted, reported with an occurrence count when the window ends
+            return true;
+        }
+
+        NRBreadcrumbRing ring = breadcrumbRing;
+        if (null != ring) {
+            ring.flush(this);
+        }
+        return forwardHandledException(exceptionToHandle, exceptionAttributes);
+    }
+
+    /**
+     * Sends a handled exception to the agent, bypassing deduplication.
+     */
+    boolean forwardHandledException(Exception exceptionToHandle, Map<String, Object> exceptionAttributes) {
         if (null == exceptionAttributes) {
-            exceptionAttributes = new HashMap();
+            exceptionAttributes = Collections.emptyMap();
         }
-        return NewRelic.recordHandledException(exceptionToHandle, exceptionAttributes);
+        return backend.recordHandledException(exceptionToHandle, exceptionAttributes);
     }
 
     /**
@@ -197,7 +646,11 @@ public class NRInstance {
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/set-max-event-buffer-time
      */
     void setMaxEventBufferTime(int maxBufferTimeInSec) {
-        NewRelic.setMaxEventBufferTime(maxBufferTimeInSec);
+        backend.setMaxEventBufferTime(maxBufferTimeInSec);
+        NRSpool spool = eventSpool;
+        if (null != spool) {
+            spool.setBufferTime(maxBufferTimeInSec);
+        }
     }
 
     /**
@@ -206,7 +659,11 @@ public class NRInstance {
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/set-max-event-pool-size
      */
     void setMaxEventPoolSize(int maxSize) {
-        NewRelic.setMaxEventPoolSize(maxSize);
+        backend.setMaxEventPoolSize(maxSize);
+        NRHarvestTuner tuner = harvestTuner;
+        if (null != tuner) {
+            tuner.setPoolSize(maxSize);
+        }
     }
 
     /**
@@ -214,7 +671,7 @@ public class NRInstance {
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/set-user-id
      */
     boolean setUserId(String userId) {
-        return NewRelic.setUserId(userId); //NewRelic.setUserId("SampleUserName");
+        return backend.setUserId(userId);
     }
 
     /**
@@ -222,7 +679,7 @@ public class NRInstance {
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/notice-network-failure
      */
     void noticeNetworkFailure(String url, String httpMethod, long startTime, long endTime, Exception exception) {
-        NewRelic.noticeNetworkFailure(url, httpMethod, startTime, endTime, exception);
+        backend.noticeNetworkFailure(url, httpMethod, startTime, endTime, exception);
     }
 
     /**
@@ -230,15 +687,24 @@ public class NRInstance {
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/recordmetric-android-sdk-api
      */
     void recordMetric(String name, String category) {
-        NewRelic.recordMetric(name, category);
+        NRMetricAggregator aggregator = metricAggregator;
+        if (null != aggregator && aggregator.record(name, category, 1.0)) {
+            return;
+        }
+        backend.recordMetric(name, category, 1.0);
     }
 
     /**
      * Record custom metrics (arbitrary numerical data).
+     * Values are pre-aggregated and flushed periodically when metric aggregation is enabled.
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/recordmetric-android-sdk-api
      */
     void recordMetric(String name, String category, double value) {
-        NewRelic.recordMetric(name, category, value);
+        NRMetricAggregator aggregator = metricAggregator;
+        if (null != aggregator && aggregator.record(name, category, value)) {
+            return;
+        }
+        backend.recordMetric(name, category, value);
     }
 
     /**
@@ -246,11 +712,27 @@ public class NRInstance {
      * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/recordmetric-android-sdk-api
      */
     void recordMetric(String name, String category, int count, double totalValue, double exclusiveValue) {
-        NewRelic.recordMetric(name, category, count, totalValue, exclusiveValue);
+        backend.recordMetric(name, category, count, totalValue, exclusiveValue, null, null);
     }
 
-    void recordMetric(String name, String category, int $count, double totalValue, double exclusiveValue, MetricUnit countUnit, MetricUnit valueUnit) {
+    /**
+     * Record custom metrics with units.
+     * ref - https://docs.newrelic.com/docs/mobile-monitoring/new-relic-mobile-android/android-sdk-api/recordmetric-android-sdk-api
+     */
+    void recordMetric(String name, String category, int count, double totalValue, double exclusiveValue, MetricUnit countUnit, MetricUnit valueUnit) {
+        backend.recordMetric(name, category, count, totalValue, exclusiveValue, countUnit, valueUnit);
+    }
 
+    /**
+     * Record a single custom metric value with units, value must already be in the canonical valueUnit.
+     * Values are pre-aggregated and flushed periodically when metric aggregation is enabled.
+     */
+    void recordMetric(String name, String category, double value, MetricUnit countUnit, MetricUnit valueUnit) {
+        NRMetricAggregator aggregator = metricAggregator;
+        if (null != aggregator && aggregator.record(name, category, value, countUnit, valueUnit)) {
+            return;
+        }
+        backend.recordMetric(name, category, 1, value, value, countUnit, valueUnit);
     }
 
 }
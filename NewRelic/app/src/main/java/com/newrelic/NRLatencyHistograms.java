@@ -0,0 +1,115 @@
+package com.newrelic;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+import com.newrelic.utils.LogHistogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms keyed by HTTP route ("Http/GET https://host/users/{id}") or span name
+ * ("Span/Checkout"), flushed periodically as p50, p90, p99 and max metrics in the
+ * "NRSdk/Latency" category, e.g. "Span/Checkout/p99".
+ * <p>
+ * Values are kept in microseconds up to MAX_LATENCY, each histogram takes about 7 KB.
+ */
+class NRLatencyHistograms implements Runnable {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRLatencyHistograms.class.getSimpleName());
+
+    static final String METRIC_CATEGORY = "NRSdk/Latency";
+
+    static final String HTTP_PREFIX = "Http/";
+    static final String SPAN_PREFIX = "Span/";
+
+    /* bound on histograms, latencies of further keys are dropped */
+    static final int MAX_HISTOGRAMS = 100;
+
+    static final long MAX_LATENCY_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private static final double[] PERCENTILES = {50, 90, 99};
+    private static final String[] PERCENTILE_NAMES = {"/p50", "/p90", "/p99"};
+
+    private final NRInstance instance;
+
+    private final ConcurrentHashMap<String, LogHistogram> histograms = new ConcurrentHashMap<>();
+
+    /* reused by the flush, only touched on the scheduler thread */
+    private final LogHistogram snapshot = new LogHistogram(MAX_LATENCY_MICROS);
+
+    private ScheduledFuture<?> flushTask;
+
+    NRLatencyHistograms(NRInstance instance) {
+        this.instance = instance;
+    }
+
+    synchronized void start(long flushIntervalMs) {
+        if (null == flushTask) {
+            flushTask = NRScheduler.scheduleAtFixedRate("NRLatencyHistograms.flush()", this, flushIntervalMs);
+        }
+    }
+
+    /**
+     * @param key   histogram key, HTTP_PREFIX or SPAN_PREFIX followed by the route or span name
+     * @param nanos latency in nanoseconds
+     */
+    void record(String key, long nanos) {
+        LogHistogram histogram = histograms.get(key);
+        if (null == histogram) {
+            if (histograms.size() >= MAX_HISTOGRAMS) {
+                return;
+            }
+
+            LogHistogram created = new LogHistogram(MAX_LATENCY_MICROS);
+            histogram = histograms.putIfAbsent(key, created);
+            if (null == histogram) {
+                histogram = created;
+            }
+        }
+
+        histogram.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    @Override
+    public void run() {
+        flush();
+    }
+
+    /**
+     * Forwards the percentiles of everything recorded since the last flush to the agent.
+     */
+    synchronized void flush() {
+        for (Map.Entry<String, LogHistogram> entry : histograms.entrySet()) {
+            LogHistogram h = entry.getValue().drainTo(snapshot);
+            if (h.getCount() == 0) {
+                continue;
+            }
+
+            try {
+                String key = entry.getKey();
+                // sent as is, pre-aggregating percentiles would average them
+                for (int i = 0; i < PERCENTILES.length; i++) {
+                    recordPercentile(key + PERCENTILE_NAMES[i], h.getValueAtPercentile(PERCENTILES[i]));
+                }
+                recordPercentile(key + "/max", h.getMax());
+            } catch (Exception e) {
+                logger.error("error in flush()", e);
+            }
+        }
+    }
+
+    private void recordPercentile(String name, long micros) {
+        double seconds = micros / 1e6;
+        instance.recordMetric(name, METRIC_CATEGORY, 1, seconds, seconds, MetricUnit.OPERATIONS, MetricUnit.SECONDS);
+    }
+
+    /**
+     * @return histogram of a key, null if nothing was recorded for it
+     */
+    LogHistogram get(String key) {
+        return histograms.get(key);
+    }
+}
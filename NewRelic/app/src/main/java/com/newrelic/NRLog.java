@@ -2,6 +2,11 @@ package com.newrelic;
 
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 public class NRLog {
     // Note -
     // keep a WeakReference of loggers here? May be, we don't need it since
@@ -11,6 +16,28 @@ public class NRLog {
     static boolean ENABLE_LOGGING = false;
     static int LOG_LEVEL = Log.ERROR;
 
+    // in-memory ring of recent lines, null unless enabled
+    private static volatile Ring ring;
+    private static volatile int ringLevel = Log.INFO;
+
+    /* marks an absent argument, so a null argument still renders as "null" */
+    private static final Object NONE = new Object();
+
+    /* thread names are looked up once per thread */
+    private static final ThreadLocal<String> threadName = new ThreadLocal<String>() {
+        @Override
+        protected String initialValue() {
+            return Thread.currentThread().getName();
+        }
+    };
+
+    private static final ThreadLocal<StringBuilder> builder = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(128);
+        }
+    };
+
     private final String TAG = "NRSdk";
     private final String tag;
 
@@ -22,50 +49,222 @@ public class NRLog {
         return new NRLog(tag);
     }
 
+    /**
+     * Keeps the most recent SDK log lines in memory, independent of logcat logging.
+     *
+     * @param capacity number of lines to keep
+     * @param level    minimum level kept, e.g. Log.INFO
+     */
+    public static void enableRingBuffer(int capacity, int level) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+
+        ringLevel = level;
+        ring = new Ring(capacity);
+    }
+
+    public static void disableRingBuffer() {
+        ring = null;
+    }
+
+    /**
+     * @return recent log lines, oldest first. Empty if the ring buffer is disabled.
+     */
+    public static List<String> dumpRingBuffer() {
+        Ring r = ring;
+        return null == r ? new ArrayList<String>() : r.dump();
+    }
+
     protected boolean shouldLog(int level) {
-        return (ENABLE_LOGGING && LOG_LEVEL <= level);
+        return (ENABLE_LOGGING && LOG_LEVEL <= level) || (null != ring && ringLevel <= level);
     }
 
     String text(String message) {
         // return String.format("%s/%s - %s", tag, getThreadInfo(), message);
-        return String.format("%s [%s] - %s", tag, getThreadInfo(), message);
+        StringBuilder sb = builder.get();
+        sb.setLength(0);
+        return sb.append(tag).append(" [").append(getThreadInfo()).append("] - ").append(message).toString();
     }
 
     public boolean isDebugEnabled() {
         return shouldLog(Log.DEBUG);
     }
 
+    public boolean isInfoEnabled() {
+        return shouldLog(Log.INFO);
+    }
+
+    public boolean isErrorEnabled() {
+        return shouldLog(Log.ERROR);
+    }
+
     public int debug(String message) {
-        return shouldLog(Log.DEBUG) ? Log.d(TAG, text(message)) : 0;
+        return shouldLog(Log.DEBUG) ? log(Log.DEBUG, message, NONE, NONE, null, null) : 0;
+    }
+
+    public int debug(String template, long arg) {
+        return shouldLog(Log.DEBUG) ? log(Log.DEBUG, template, arg, NONE, null, null) : 0;
+    }
+
+    public int debug(String template, Object arg) {
+        return shouldLog(Log.DEBUG) ? log(Log.DEBUG, template, arg, NONE, null, null) : 0;
     }
 
-    public int debug(String format, Object... args) {
-        return shouldLog(Log.DEBUG) ? Log.d(TAG, text(String.format(format, args))) : 0;
+    public int debug(String template, Object arg1, Object arg2) {
+        return shouldLog(Log.DEBUG) ? log(Log.DEBUG, template, arg1, arg2, null, null) : 0;
+    }
+
+    public int debug(String template, Object... args) {
+        return shouldLog(Log.DEBUG) ? log(Log.DEBUG, template, NONE, NONE, args, null) : 0;
     }
 
     public int info(String message) {
-        return shouldLog(Log.INFO) ? Log.i(TAG, text(message)) : 0;
+        return shouldLog(Log.INFO) ? log(Log.INFO, message, NONE, NONE, null, null) : 0;
+    }
+
+    public int info(String template, long arg) {
+        return shouldLog(Log.INFO) ? log(Log.INFO, template, arg, NONE, null, null) : 0;
+    }
+
+    public int info(String template, Object arg) {
+        return shouldLog(Log.INFO) ? log(Log.INFO, template, arg, NONE, null, null) : 0;
     }
 
-    public int info(String format, Object... args) {
-        return shouldLog(Log.INFO) ? Log.i(TAG, text(String.format(format, args))) : 0;
+    public int info(String template, Object arg1, Object arg2) {
+        return shouldLog(Log.INFO) ? log(Log.INFO, template, arg1, arg2, null, null) : 0;
+    }
+
+    public int info(String template, Object... args) {
+        return shouldLog(Log.INFO) ? log(Log.INFO, template, NONE, NONE, args, null) : 0;
     }
 
     public int error(String message) {
-        return shouldLog(Log.ERROR) ? Log.e(TAG, text(message)) : 0;
+        return shouldLog(Log.ERROR) ? log(Log.ERROR, message, NONE, NONE, null, null) : 0;
     }
 
     public int error(String message, Throwable tr) {
-        return shouldLog(Log.ERROR) ? Log.e(TAG, text(message), tr) : 0;
+        return shouldLog(Log.ERROR) ? log(Log.ERROR, message, NONE, NONE, null, tr) : 0;
+    }
+
+    public int error(String template, Object arg) {
+        return shouldLog(Log.ERROR) ? log(Log.ERROR, template, arg, NONE, null, null) : 0;
     }
 
-    public int error(String format, Object... args) {
-        return shouldLog(Log.ERROR) ? Log.e(TAG, text(String.format(format, args))) : 0;
+    public int error(String template, Object arg1, Object arg2) {
+        return shouldLog(Log.ERROR) ? log(Log.ERROR, template, arg1, arg2, null, null) : 0;
+    }
+
+    public int error(String template, Object... args) {
+        return shouldLog(Log.ERROR) ? log(Log.ERROR, template, NONE, NONE, args, null) : 0;
+    }
+
+    private int log(int level, String template, Object arg1, Object arg2, Object[] args, Throwable tr) {
+        String line = text(render(template, arg1, arg2, args));
+
+        Ring r = ring;
+        if (null != r && ringLevel <= level) {
+            r.add(level, line, tr);
+        }
+
+        if (!ENABLE_LOGGING || LOG_LEVEL > level) {
+            return 0;
+        }
+
+        switch (level) {
+            case Log.DEBUG:
+                return Log.d(TAG, line);
+            case Log.INFO:
+                return Log.i(TAG, line);
+            default:
+                return null == tr ? Log.e(TAG, line) : Log.e(TAG, line, tr);
+        }
+    }
+
+    /**
+     * Replaces each "{}" in the template with the next argument.
+     * Arguments without a placeholder are appended, e.g. error("error in init()", e) renders "error in init(): e".
+     */
+    static String render(String template, Object arg1, Object arg2, Object[] args) {
+        int count = null != args ? args.length : (arg2 != NONE ? 2 : (arg1 != NONE ? 1 : 0));
+        if (count == 0) {
+            return template;
+        }
+
+        StringBuilder sb = new StringBuilder(template.length() + 32);
+        int next = 0;
+        int from = 0;
+        int at;
+        while (next < count && (at = template.indexOf("{}", from)) >= 0) {
+            sb.append(template, from, at).append(arg(next++, arg1, arg2, args));
+            from = at + 2;
+        }
+        sb.append(template, from, template.length());
+
+        for (boolean first = true; next < count; next++, first = false) {
+            sb.append(first ? ": " : ", ").append(arg(next, arg1, arg2, args));
+        }
+        return sb.toString();
+    }
+
+    private static Object arg(int index, Object arg1, Object arg2, Object[] args) {
+        if (null != args) {
+            return args[index];
+        }
+        return index == 0 ? arg1 : arg2;
     }
 
     public static String getThreadInfo() {
-        Thread t = Thread.currentThread();
         // return String.format("(%s %d/%d)", t.getName(), t.getId(), t.getPriority());
-        return String.format("%s", t.getName());
+        return threadName.get();
+    }
+
+    /**
+     * Fixed-size ring of rendered log lines, overwrites the oldest line when full.
+     */
+    private static final class Ring {
+        private final AtomicReferenceArray<String> lines;
+        private final AtomicLong next = new AtomicLong();
+
+        Ring(int capacity) {
+            this.lines = new AtomicReferenceArray<>(capacity);
+        }
+
+        void add(int level, String line, Throwable tr) {
+            StringBuilder sb = new StringBuilder(line.length() + 24);
+            sb.append(System.currentTimeMillis()).append(' ').append(levelChar(level)).append(' ').append(line);
+            if (null != tr) {
+                sb.append(": ").append(tr);
+            }
+
+            long index = next.getAndIncrement();
+            lines.set((int) (index % lines.length()), sb.toString());
+        }
+
+        List<String> dump() {
+            int capacity = lines.length();
+            long end = next.get();
+            long start = Math.max(0, end - capacity);
+
+            List<String> dump = new ArrayList<>((int) (end - start));
+            for (long i = start; i < end; i++) {
+                String line = lines.get((int) (i % capacity));
+                if (null != line) {
+                    dump.add(line);
+                }
+            }
+            return dump;
+        }
+
+        private static char levelChar(int level) {
+            switch (level) {
+                case Log.DEBUG:
+                    return 'D';
+                case Log.INFO:
+                    return 'I';
+                default:
+                    return 'E';
+            }
+        }
     }
 }
@@ -0,0 +1,21 @@
+package com.newrelic;
+
+/**
+ * Reported through recordHandledException() for a main thread stall detected by NRStallWatchdog.
+ * Its stack trace is the main thread's stack sampled most often during the stall.
+ */
+final class NRMainThreadStall extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    NRMainThreadStall(long thresholdMs, StackTraceElement[] stackTrace) {
+        super("Main thread blocked for more than " + thresholdMs + " ms");
+        setStackTrace(stackTrace);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        // the watchdog's own stack is of no interest, the sampled one is set instead
+        return this;
+    }
+}
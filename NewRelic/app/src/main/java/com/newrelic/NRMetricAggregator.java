@@ -0,0 +1,174 @@
+package com.newrelic;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+import com.newrelic.utils.StripedStats;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pre-aggregates recordMetric() values in process, keyed by (name, category, count unit, value unit),
+ * and flushes them periodically as one recordMetric(name, category, count, total, exclusive[, units]) call per key.
+ * A hot-path record is a map lookup plus a few atomic updates.
+ * Min, max and sum of squares are tracked per key as well, but the agent API only takes count and totals.
+ */
+class NRMetricAggregator implements Runnable {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRMetricAggregator.class.getSimpleName());
+
+    /* bound on aggregated keys, metrics beyond it are forwarded unaggregated */
+    static final int MAX_METRICS = 1000;
+
+    private static final MetricUnit[] UNITS = MetricUnit.values();
+
+    /* one slot per (count unit, value unit) pair, index 0 stands for "no unit" */
+    private static final int SLOTS = (UNITS.length + 1) * (UNITS.length + 1);
+
+    private final NRInstance instance;
+
+    // category -> name -> stats per unit pair, nested so a lookup needs no composite key allocation
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, AtomicReferenceArray<StripedStats>>> metrics = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /* reused by the flush, only touched on the scheduler thread */
+    private final StripedStats.Snapshot snapshot = new StripedStats.Snapshot();
+
+    private ScheduledFuture<?> flushTask;
+
+    NRMetricAggregator(NRInstance instance) {
+        this.instance = instance;
+    }
+
+    /**
+     * Starts periodic flushing.
+     *
+     * @param flushIntervalMs flush interval in milliseconds
+     */
+    synchronized void start(long flushIntervalMs) {
+        if (null == flushTask) {
+            flushTask = NRScheduler.scheduleAtFixedRate("NRMetricAggregator.flush()", this, flushIntervalMs);
+        }
+    }
+
+    /**
+     * Records a value without units.
+     *
+     * @return false if the metric could not be aggregated because MAX_METRICS is reached
+     */
+    boolean record(String name, String category, double value) {
+        return record(name, category, value, null, null);
+    }
+
+    /**
+     * Records a value, already converted to the canonical value unit.
+     *
+     * @param countUnit MetricUnit, may be null
+     * @param valueUnit MetricUnit, may be null
+     * @return false if the metric could not be aggregated because MAX_METRICS is reached
+     */
+    boolean record(String name, String category, double value, MetricUnit countUnit, MetricUnit valueUnit) {
+        StripedStats stats = stats(name, category, slot(countUnit, valueUnit));
+        if (null == stats) {
+            return false;
+        }
+
+        stats.record(value);
+        return true;
+    }
+
+    private static int slot(MetricUnit countUnit, MetricUnit valueUnit) {
+        int count = null == countUnit ? 0 : countUnit.ordinal() + 1;
+        int value = null == valueUnit ? 0 : valueUnit.ordinal() + 1;
+        return count * (UNITS.length + 1) + value;
+    }
+
+    private static MetricUnit countUnit(int slot) {
+        int index = slot / (UNITS.length + 1);
+        return index == 0 ? null : UNITS[index - 1];
+    }
+
+    private static MetricUnit valueUnit(int slot) {
+        int index = slot % (UNITS.length + 1);
+        return index == 0 ? null : UNITS[index - 1];
+    }
+
+    private StripedStats stats(String name, String category, int slot) {
+        ConcurrentHashMap<String, AtomicReferenceArray<StripedStats>> names = metrics.get(category);
+        AtomicReferenceArray<StripedStats> slots = null == names ? null : names.get(name);
+        StripedStats stats = null == slots ? null : slots.get(slot);
+        if (null != stats) {
+            return stats;
+        }
+
+        // reserve before creating anything, so maps and slot arrays stay bounded by MAX_METRICS
+        if (size.incrementAndGet() > MAX_METRICS) {
+            size.decrementAndGet();
+            return null;
+        }
+
+        if (null == names) {
+            ConcurrentHashMap<String, AtomicReferenceArray<StripedStats>> created = new ConcurrentHashMap<>();
+            names = metrics.putIfAbsent(category, created);
+            if (null == names) {
+                names = created;
+            }
+        }
+
+        if (null == slots) {
+            AtomicReferenceArray<StripedStats> created = new AtomicReferenceArray<>(SLOTS);
+            slots = names.putIfAbsent(name, created);
+            if (null == slots) {
+                slots = created;
+            }
+        }
+
+        if (!slots.compareAndSet(slot, null, new StripedStats())) {
+            // created meanwhile on another thread, which holds the reservation
+            size.decrementAndGet();
+        }
+        return slots.get(slot);
+    }
+
+    @Override
+    public void run() {
+        flush();
+    }
+
+    /**
+     * Forwards everything aggregated since the last flush to the agent.
+     */
+    synchronized void flush() {
+        for (Map.Entry<String, ConcurrentHashMap<String, AtomicReferenceArray<StripedStats>>> category : metrics.entrySet()) {
+            for (Map.Entry<String, AtomicReferenceArray<StripedStats>> metric : category.getValue().entrySet()) {
+                AtomicReferenceArray<StripedStats> slots = metric.getValue();
+                for (int slot = 0; slot < SLOTS; slot++) {
+                    StripedStats stats = slots.get(slot);
+                    if (null != stats) {
+                        flush(metric.getKey(), category.getKey(), slot, stats.drainTo(snapshot));
+                    }
+                }
+            }
+        }
+    }
+
+    private void flush(String name, String category, int slot, StripedStats.Snapshot s) {
+        if (s.count == 0) {
+            return;
+        }
+
+        try {
+            int count = (int) Math.min(Integer.MAX_VALUE, s.count);
+            if (slot == 0) {
+                instance.recordMetric(name, category, count, s.sum, s.sum);
+            } else {
+                instance.recordMetric(name, category, count, s.sum, s.sum, countUnit(slot), valueUnit(slot));
+            }
+        } catch (Exception e) {
+            logger.error("error in flush()", e);
+        }
+    }
+}
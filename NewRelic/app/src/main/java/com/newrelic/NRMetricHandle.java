@@ -0,0 +1,52 @@
+package com.newrelic;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+
+/**
+ * Pre-validated metric, created by {@link NRSdk#metric(String, String)}.
+ * Name and category are checked once, so recording through a handle does no string
+ * processing and no allocation on the calling thread. Handles are immutable and can be
+ * kept in static fields and shared between threads.
+ */
+public final class NRMetricHandle {
+
+    final String name;
+    final String category;
+
+    /* null for metrics without units */
+    final NRMetricUnit valueUnit;
+    final MetricUnit canonicalCountUnit;
+    final MetricUnit canonicalValueUnit;
+
+    NRMetricHandle(String name, String category, NRMetricUnit valueUnit) {
+        this.name = name;
+        this.category = category;
+        this.valueUnit = valueUnit;
+        this.canonicalCountUnit = null == valueUnit ? null : MetricUnit.OPERATIONS;
+        this.canonicalValueUnit = null == valueUnit ? null : valueUnit.getCanonicalUnit();
+    }
+
+    /**
+     * Records a value, in the handle's unit if it has one.
+     *
+     * @param value value of the metric
+     */
+    public void record(double value) {
+        NRSdk.record(this, null == valueUnit ? value : valueUnit.toCanonical(value));
+    }
+
+    /**
+     * Records a value of 1.
+     */
+    public void increment() {
+        record(1.0);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+}
@@ -0,0 +1,44 @@
+package com.newrelic;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+
+/**
+ * Units accepted by NRSdk.recordMetric(). Values are converted to the agent's canonical
+ * unit (bytes, seconds, ...) before they are aggregated or sent, so e.g. KILOBYTES and
+ * BYTES samples of the same metric end up in one series.
+ */
+public enum NRMetricUnit {
+    BYTES(MetricUnit.BYTES, 1),
+    KILOBYTES(MetricUnit.BYTES, 1024),
+    MEGABYTES(MetricUnit.BYTES, 1024 * 1024),
+    NANOSECONDS(MetricUnit.SECONDS, 1e-9),
+    MICROSECONDS(MetricUnit.SECONDS, 1e-6),
+    MILLISECONDS(MetricUnit.SECONDS, 1e-3),
+    SECONDS(MetricUnit.SECONDS, 1),
+    PERCENT(MetricUnit.PERCENT, 1),
+    OPERATIONS(MetricUnit.OPERATIONS, 1),
+    BYTES_PER_SECOND(MetricUnit.BYTES_PER_SECOND, 1);
+
+    private final MetricUnit canonicalUnit;
+    private final double factor;
+
+    NRMetricUnit(MetricUnit canonicalUnit, double factor) {
+        this.canonicalUnit = canonicalUnit;
+        this.factor = factor;
+    }
+
+    /**
+     * @return the agent unit values of this unit are reported in
+     */
+    MetricUnit getCanonicalUnit() {
+        return canonicalUnit;
+    }
+
+    /**
+     * @param value value in this unit
+     * @return value in the canonical unit
+     */
+    double toCanonical(double value) {
+        return value * factor;
+    }
+}
@@ -0,0 +1,89 @@
+package com.newrelic;
+
+import android.content.Context;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+
+import java.util.Map;
+
+/**
+ * NRBackend that drops every call. Used for features disabled in NRConfig;
+ * all methods are empty so the JIT can inline them away.
+ */
+final class NRNoopBackend implements NRBackend {
+
+    static final NRNoopBackend INSTANCE = new NRNoopBackend();
+
+    private NRNoopBackend() {
+    }
+
+    @Override
+    public void start(Context context, NRConfig config) {
+    }
+
+    @Override
+    public String startInteraction(String actionName) {
+        return null;
+    }
+
+    @Override
+    public void endInteraction(String interactionID) {
+    }
+
+    @Override
+    public void setInteractionName(String interactionName) {
+    }
+
+    @Override
+    public boolean recordBreadcrumb(String eventName, Map<String, Object> eventAttributes) {
+        return false;
+    }
+
+    @Override
+    public boolean recordCustomEvent(String eventType, String eventName, Map<String, Object> eventAttributes) {
+        return false;
+    }
+
+    @Override
+    public void crashNow(String message) {
+    }
+
+    @Override
+    public String currentSessionId() {
+        return null;
+    }
+
+    @Override
+    public void noticeHttpTransaction(String url, String httpMethod, int statusCode, long startTime, long endTime, long bytesSent, long bytesReceived, String responseBody) {
+    }
+
+    @Override
+    public void noticeNetworkFailure(String url, String httpMethod, long startTime, long endTime, Exception exception) {
+    }
+
+    @Override
+    public boolean recordHandledException(Exception exception, Map<String, Object> exceptionAttributes) {
+        return false;
+    }
+
+    @Override
+    public void setMaxEventBufferTime(int maxBufferTimeInSec) {
+    }
+
+    @Override
+    public void setMaxEventPoolSize(int maxSize) {
+    }
+
+    @Override
+    public boolean setUserId(String userId) {
+        return false;
+    }
+
+    @Override
+    public void recordMetric(String name, String category, double value) {
+    }
+
+    @Override
+    public void recordMetric(String name, String category, int count, double totalValue, double exclusiveValue, MetricUnit countUnit, MetricUnit valueUnit) {
+    }
+}
@@ -0,0 +1,151 @@
+package com.newrelic;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded ring buffer for calls made before NRSdk.init() completes.
+ * When full, the oldest call is overwritten. Buffered calls are replayed in order
+ * once NRInstance is initialized, after which the buffer is closed for good.
+ */
+class NRPreInitBuffer {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRPreInitBuffer.class.getSimpleName());
+
+    static final int DEFAULT_CAPACITY = 256;
+
+    static final int MAX_CAPACITY = 4096;
+
+    private NRCall[] ring;
+    private int head = 0;
+    private int size = 0;
+    private boolean closed = false;
+
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    NRPreInitBuffer(int capacity) {
+        this.ring = new NRCall[capacity];
+    }
+
+    /**
+     * Buffers a call until the SDK is initialized.
+     *
+     * @param call NRCall
+     * @return false if the buffer is disabled or already closed by a replay
+     */
+    synchronized boolean capture(NRCall call) {
+        if (closed || ring.length == 0) {
+            return false;
+        }
+
+        call.detach();
+
+        if (size == ring.length) {
+            // overwrite oldest
+            ring[head] = call;
+            head = (head + 1) % ring.length;
+            dropped.incrementAndGet();
+        } else {
+            ring[(head + size) % ring.length] = call;
+            size++;
+        }
+
+        captured.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Resizes the buffer, keeping the most recent calls.
+     *
+     * @param capacity new capacity, 0 disables buffering
+     */
+    synchronized void setCapacity(int capacity) {
+        if (closed || capacity == ring.length) {
+            return;
+        }
+
+        NRCall[] resized = new NRCall[capacity];
+        int keep = Math.min(size, capacity);
+        int skip = size - keep;
+        for (int i = 0; i < keep; i++) {
+            resized[i] = ring[(head + skip + i) % ring.length];
+        }
+
+        dropped.addAndGet(skip);
+        ring = resized;
+        head = 0;
+        size = keep;
+    }
+
+    /**
+     * Replays buffered calls in order and closes the buffer.
+     * Calls go through the dispatcher when async dispatch is enabled.
+     *
+     * @param instance   initialized NRInstance
+     * @param dispatcher NRDispatcher, may be null
+     */
+    synchronized void replay(NRInstance instance, NRDispatcher dispatcher) {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % ring.length;
+            NRCall call = ring[index];
+            ring[index] = null;
+
+            try {
+                if (null != dispatcher) {
+                    if (!dispatcher.dispatch(call)) {
+                        dropped.incrementAndGet();
+                        continue;
+                    }
+                } else {
+                    call.invoke(instance);
+                }
+                replayed.incrementAndGet();
+            } catch (Exception e) {
+                dropped.incrementAndGet();
+                NRStats.INSTANCE.failed(call.api);
+                logger.error("error in {}() replay", call.api.getMethodName(), e);
+            }
+        }
+
+        logger.info("NRPreInitBuffer replayed {} calls", replayed.get());
+        release();
+    }
+
+    /**
+     * Drops buffered calls and closes the buffer, used when the agent failed to start.
+     */
+    synchronized void discard() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        dropped.addAndGet(size);
+        release();
+    }
+
+    private void release() {
+        ring = new NRCall[0];
+        head = 0;
+        size = 0;
+    }
+
+    long getCapturedCount() {
+        return captured.get();
+    }
+
+    long getReplayedCount() {
+        return replayed.get();
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+}
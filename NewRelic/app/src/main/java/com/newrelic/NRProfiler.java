@@ -0,0 +1,314 @@
+package com.newrelic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Sampling profiler for interactions named in NRConfig. While such an interaction is open,
+ * the stack of the thread which started it is sampled periodically. Samples are kept as collapsed
+ * stacks of interned frame ids with a count each.
+ * <p>
+ * When the interaction ends, its TOP_STACKS hottest stacks are recorded as "NRSdkProfile" custom events
+ * with the collapsed stack ("root;...;leaf"), its sample count and share of all samples.
+ * A session which reaches MAX_SAMPLES, or whose thread dies, is reported right away with
+ * "truncated" set, so interactions which never end do not hold a session slot.
+ * <p>
+ * Sampling runs on its own "NRSdk-profiler" thread, so stack walks do not delay the flushes on
+ * NRScheduler. A sample walks at most MAX_DEPTH frames of one thread, there are at most
+ * MAX_SESSIONS samples per interval, and a session takes at most MAX_SAMPLES samples.
+ */
+class NRProfiler {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRProfiler.class.getSimpleName());
+
+    static final String EVENT_TYPE = "NRSdkProfile";
+
+    /* hottest stacks recorded per interaction */
+    static final int TOP_STACKS = 10;
+
+    /* bound on interactions profiled at the same time */
+    static final int MAX_SESSIONS = 8;
+
+    /* bound on samples per interaction, sampling stops once reached */
+    static final int MAX_SAMPLES = 3000;
+
+    /* bound on distinct stacks per interaction, further stacks only count towards the total */
+    static final int MAX_STACKS = 500;
+
+    /* frames kept per stack, counted from the leaf */
+    static final int MAX_DEPTH = 64;
+
+    /* bound on interned frames, further frames are collapsed into UNKNOWN_FRAME */
+    static final int MAX_FRAMES = 8192;
+
+    /* attribute values are limited to 4096 characters, longer stacks are cut at the root */
+    static final int MAX_STACK_LENGTH = 4000;
+
+    static final String UNKNOWN_FRAME = "?";
+
+    private final NRInstance instance;
+    private final Set<String> interactionNames;
+    private final long sampleIntervalMs;
+
+    // frame -> id, and id -> frame text; shared by all sessions
+    private final ConcurrentHashMap<StackTraceElement, Integer> frameIds = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> frames = new AtomicReferenceArray<>(MAX_FRAMES);
+
+    // interaction id -> open session
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "NRSdk-profiler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    NRProfiler(NRInstance instance, Set<String> interactionNames, long sampleIntervalMs) {
+        this.instance = instance;
+        this.interactionNames = interactionNames;
+        this.sampleIntervalMs = sampleIntervalMs;
+        frames.set(0, UNKNOWN_FRAME);
+    }
+
+    /**
+     * Starts sampling the calling thread if the interaction is one to profile.
+     */
+    void onInteractionStarted(String interactionID, String actionName) {
+        if (null == interactionID || !interactionNames.contains(actionName)) {
+            return;
+        }
+
+        if (sessions.size() >= MAX_SESSIONS) {
+            logger.error("error in onInteractionStarted()", "too many profiled interactions, " + actionName + " is not profiled");
+            return;
+        }
+
+        Session session = new Session(interactionID, actionName, Thread.currentThread());
+        if (null == sessions.putIfAbsent(interactionID, session)) {
+            session.task = sampler.scheduleAtFixedRate(session, sampleIntervalMs, sampleIntervalMs, TimeUnit.MILLISECONDS);
+            if (sessions.get(interactionID) != session) {
+                // ended meanwhile on another thread
+                session.stop();
+            }
+        }
+    }
+
+    /**
+     * Stops sampling and records the hottest stacks of the interaction, if it was profiled.
+     */
+    void onInteractionEnded(String interactionID) {
+        Session session = sessions.remove(interactionID);
+        if (null == session) {
+            return;
+        }
+
+        session.stop();
+        report(session, false);
+    }
+
+    /**
+     * Ends a session which stopped sampling before its interaction ended.
+     */
+    private void onSamplingStopped(Session session) {
+        session.stop();
+        if (sessions.remove(session.interactionID, session)) {
+            report(session, true);
+        }
+    }
+
+    /**
+     * @return number of interactions being profiled
+     */
+    int getSessionCount() {
+        return sessions.size();
+    }
+
+    private int frameId(StackTraceElement frame) {
+        Integer id = frameIds.get(frame);
+        if (null != id) {
+            return id;
+        }
+
+        synchronized (frameIds) {
+            id = frameIds.get(frame);
+            if (null != id) {
+                return id;
+            }
+
+            // id 0 is UNKNOWN_FRAME
+            int next = frameIds.size() + 1;
+            if (next >= MAX_FRAMES) {
+                return 0;
+            }
+
+            frames.set(next, frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber());
+            frameIds.put(frame, next);
+            return next;
+        }
+    }
+
+    private void report(Session session, boolean truncated) {
+        List<Map.Entry<Stack, int[]>> stacks;
+        int total;
+        synchronized (session) {
+            stacks = new ArrayList<>(session.stacks.entrySet());
+            total = session.samples;
+        }
+        if (total == 0) {
+            return;
+        }
+
+        Collections.sort(stacks, new Comparator<Map.Entry<Stack, int[]>>() {
+            @Override
+            public int compare(Map.Entry<Stack, int[]> a, Map.Entry<Stack, int[]> b) {
+                return b.getValue()[0] - a.getValue()[0];
+            }
+        });
+
+        for (int rank = 0, n = Math.min(TOP_STACKS, stacks.size()); rank < n; rank++) {
+            Map.Entry<Stack, int[]> stack = stacks.get(rank);
+            int count = stack.getValue()[0];
+            try {
+                Map<String, Object> attributes = new HashMap<>();
+                attributes.put("interactionName", session.actionName);
+                attributes.put("interactionID", session.interactionID);
+                attributes.put("rank", rank + 1);
+                attributes.put("stack", collapse(stack.getKey().frameIds));
+                attributes.put("samples", count);
+                attributes.put("totalSamples", total);
+                attributes.put("share", count / (double) total);
+                attributes.put("sampleIntervalMs", sampleIntervalMs);
+                attributes.put("truncated", truncated);
+                instance.recordCustomEvent(EVENT_TYPE, session.actionName, attributes);
+            } catch (Exception e) {
+                logger.error("error in report()", e);
+            }
+        }
+    }
+
+    /**
+     * @return frames from root to leaf separated by ';', cut at the root to MAX_STACK_LENGTH
+     */
+    private String collapse(int[] ids) {
+        StringBuilder sb = new StringBuilder(256);
+        // ids are leaf first
+        for (int i = ids.length - 1; i >= 0; i--) {
+            if (sb.length() > 0) {
+                sb.append(';');
+            }
+            sb.append(frames.get(ids[i]));
+        }
+        return sb.length() <= MAX_STACK_LENGTH ? sb.toString() : sb.substring(sb.length() - MAX_STACK_LENGTH);
+    }
+
+    /**
+     * Samples of one profiled interaction, the sampling task runs on the profiler thread.
+     */
+    private final class Session implements Runnable {
+        final String interactionID;
+        final String actionName;
+        final Thread thread;
+
+        // collapsed stack -> sample count, guarded by this
+        final Map<Stack, int[]> stacks = new HashMap<>();
+        int samples;
+
+        volatile ScheduledFuture<?> task;
+
+        Session(String interactionID, String actionName, Thread thread) {
+            this.interactionID = interactionID;
+            this.actionName = actionName;
+            this.thread = thread;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!sample()) {
+                    onSamplingStopped(this);
+                }
+            } catch (Exception e) {
+                // an exception would cancel the task silently
+                logger.error("error in sample()", e);
+                onSamplingStopped(this);
+            }
+        }
+
+        /**
+         * @return false once sampling should stop
+         */
+        private boolean sample() {
+            StackTraceElement[] trace = thread.getStackTrace();
+            if (trace.length == 0) {
+                // the thread has died
+                return false;
+            }
+
+            int depth = Math.min(trace.length, MAX_DEPTH);
+            int[] ids = new int[depth];
+            for (int i = 0; i < depth; i++) {
+                ids[i] = frameId(trace[i]);
+            }
+            Stack stack = new Stack(ids);
+
+            synchronized (this) {
+                samples++;
+                int[] count = stacks.get(stack);
+                if (null != count) {
+                    count[0]++;
+                } else if (stacks.size() < MAX_STACKS) {
+                    stacks.put(stack, new int[]{1});
+                }
+
+                return samples < MAX_SAMPLES;
+            }
+        }
+
+        void stop() {
+            ScheduledFuture<?> t = task;
+            if (null != t) {
+                t.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Interned frame ids of one stack, leaf first.
+     */
+    private static final class Stack {
+        final int[] frameIds;
+        final int hash;
+
+        Stack(int[] frameIds) {
+            this.frameIds = frameIds;
+            this.hash = Arrays.hashCode(frameIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Stack && Arrays.equals(frameIds, ((Stack) o).frameIds));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.newrelic;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Completes once the agent has been started and NRSdk is ready to record.
+ * The result is true if the agent started successfully.
+ */
+class NRReadiness implements Future<Boolean> {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRReadiness.class.getSimpleName());
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final List<NRSdk.OnReadyListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean started = false;
+
+    /**
+     * Adds a listener. It is called right away, on the calling thread, if already complete,
+     * otherwise on the thread that completes the startup.
+     *
+     * @param listener NRSdk.OnReadyListener
+     */
+    void addListener(NRSdk.OnReadyListener listener) {
+        if (!isDone()) {
+            listeners.add(listener);
+            // complete() may have run in between, make sure the listener is not missed
+            if (!isDone() || !listeners.remove(listener)) {
+                return;
+            }
+        }
+
+        callListener(listener);
+    }
+
+    void complete(boolean started) {
+        if (isDone()) {
+            return;
+        }
+
+        this.started = started;
+        latch.countDown();
+
+        for (NRSdk.OnReadyListener listener : listeners) {
+            if (listeners.remove(listener)) {
+                callListener(listener);
+            }
+        }
+    }
+
+    private void callListener(NRSdk.OnReadyListener listener) {
+        try {
+            listener.onReady(started);
+        } catch (Exception e) {
+            logger.error("error in onReady()", e);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return latch.getCount() == 0;
+    }
+
+    @Override
+    public Boolean get() throws InterruptedException {
+        latch.await();
+        return started;
+    }
+
+    @Override
+    public Boolean get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException("NRSdk is not ready yet");
+        }
+        return started;
+    }
+}
@@ -0,0 +1,160 @@
+package com.newrelic;
+
+import android.content.Context;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * NRBackend that keeps the calls in memory, for running the facade in tests and benchmarks on a plain JVM.
+ * Only the last MAX_CALLS calls are kept.
+ */
+final class NRRecordingBackend implements NRBackend {
+
+    /**
+     * One recorded backend call.
+     */
+    static final class Call {
+        final String method;
+        final List<Object> args;
+
+        Call(String method, Object... args) {
+            this.method = method;
+            this.args = Arrays.asList(args);
+        }
+
+        @Override
+        public String toString() {
+            return method + args;
+        }
+    }
+
+    /* bound on kept calls, older calls are dropped */
+    static final int MAX_CALLS = 10000;
+
+    private final ArrayDeque<Call> calls = new ArrayDeque<>();
+    private final AtomicInteger interactionIds = new AtomicInteger();
+
+    private synchronized void add(String method, Object... args) {
+        if (calls.size() == MAX_CALLS) {
+            calls.removeFirst();
+        }
+        calls.addLast(new Call(method, args));
+    }
+
+    /**
+     * @return copy of the kept calls, oldest first
+     */
+    synchronized List<Call> getCalls() {
+        return new ArrayList<>(calls);
+    }
+
+    /**
+     * @return number of kept calls of the given backend method
+     */
+    synchronized int count(String method) {
+        int count = 0;
+        for (Call call : calls) {
+            if (call.method.equals(method)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    synchronized void clear() {
+        calls.clear();
+    }
+
+    @Override
+    public void start(Context context, NRConfig config) {
+        add("start", config.newRelicToken);
+    }
+
+    @Override
+    public String startInteraction(String actionName) {
+        String interactionID = String.valueOf(interactionIds.incrementAndGet());
+        add("startInteraction", actionName, interactionID);
+        return interactionID;
+    }
+
+    @Override
+    public void endInteraction(String interactionID) {
+        add("endInteraction", interactionID);
+    }
+
+    @Override
+    public void setInteractionName(String interactionName) {
+        add("setInteractionName", interactionName);
+    }
+
+    @Override
+    public boolean recordBreadcrumb(String eventName, Map<String, Object> eventAttributes) {
+        add("recordBreadcrumb", eventName, eventAttributes);
+        return true;
+    }
+
+    @Override
+    public boolean recordCustomEvent(String eventType, String eventName, Map<String, Object> eventAttributes) {
+        add("recordCustomEvent", eventType, eventName, eventAttributes);
+        return true;
+    }
+
+    @Override
+    public void crashNow(String message) {
+        add("crashNow", message);
+    }
+
+    @Override
+    public String currentSessionId() {
+        return "recording-session";
+    }
+
+    @Override
+    public void noticeHttpTransaction(String url, String httpMethod, int statusCode, long startTime, long endTime, long bytesSent, long bytesReceived, String responseBody) {
+        add("noticeHttpTransaction", url, httpMethod, statusCode, startTime, endTime, bytesSent, bytesReceived, responseBody);
+    }
+
+    @Override
+    public void noticeNetworkFailure(String url, String httpMethod, long startTime, long endTime, Exception exception) {
+        add("noticeNetworkFailure", url, httpMethod, startTime, endTime, exception);
+    }
+
+    @Override
+    public boolean recordHandledException(Exception exception, Map<String, Object> exceptionAttributes) {
+        add("recordHandledException", exception, exceptionAttributes);
+        return true;
+    }
+
+    @Override
+    public void setMaxEventBufferTime(int maxBufferTimeInSec) {
+        add("setMaxEventBufferTime", maxBufferTimeInSec);
+    }
+
+    @Override
+    public void setMaxEventPoolSize(int maxSize) {
+        add("setMaxEventPoolSize", maxSize);
+    }
+
+    @Override
+    public boolean setUserId(String userId) {
+        add("setUserId", userId);
+        return true;
+    }
+
+    @Override
+    public void recordMetric(String name, String category, double value) {
+        add("recordMetric", name, category, value);
+    }
+
+    @Override
+    public void recordMetric(String name, String category, int count, double totalValue, double exclusiveValue, MetricUnit countUnit, MetricUnit valueUnit) {
+        add("recordMetric", name, category, count, totalValue, exclusiveValue, countUnit, valueUnit);
+    }
+}
@@ -0,0 +1,76 @@
+package com.newrelic;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single background thread shared by the SDK's periodic tasks (flushes, tuning, leak checks).
+ */
+class NRScheduler {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRScheduler.class.getSimpleName());
+
+    private static ScheduledExecutorService executor;
+
+    private NRScheduler() {
+    }
+
+    private static synchronized ScheduledExecutorService executor() {
+        if (null == executor) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "NRSdk-scheduler");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Runs a task periodically. An exception thrown by the task is logged and does not cancel it.
+     *
+     * @param name     task name, used for logging
+     * @param task     Runnable
+     * @param periodMs period in milliseconds
+     * @return ScheduledFuture to cancel the task
+     */
+    static ScheduledFuture<?> scheduleAtFixedRate(final String name, final Runnable task, long periodMs) {
+        return executor().scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    logger.error("error in {}", name, e);
+                }
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a task once in the background. An exception thrown by the task is logged.
+     *
+     * @param name task name, used for logging
+     * @param task Runnable
+     */
+    static void execute(final String name, final Runnable task) {
+        executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    logger.error("error in {}", name, e);
+                }
+            }
+        });
+    }
+}
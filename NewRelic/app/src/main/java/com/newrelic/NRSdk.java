@@ -2,18 +2,56 @@ package com.newrelic;
 
 import android.content.Context;
 
+import com.newrelic.agent.android.metric.MetricUnit;
+import com.newrelic.utils.StripedStats;
 import com.newrelic.utils.Utils;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class NRSdk {
 
+    /**
+     * Callback for when NRSdk is ready to record, see {@link #addOnReadyListener(OnReadyListener)}.
+     */
+    public interface OnReadyListener {
+        /**
+         * @param started true if the agent started successfully
+         */
+        void onReady(boolean started);
+    }
+
     // logger
     private static final NRLog logger = NRLog.getLogger(NRSdk.class.getSimpleName());
 
     // holder  instance
-    private static NRInstance nrInstance;
+    private static volatile NRInstance nrInstance;
+
+    // calls made before init() completes, replayed once the agent is started
+    private static volatile NRPreInitBuffer preInitBuffer = new NRPreInitBuffer(NRPreInitBuffer.DEFAULT_CAPACITY);
+
+    // async dispatch pipeline, null unless enabled in NRConfig
+    private static volatile NRDispatcher dispatcher;
+
+    // completes once the agent is started and buffered calls are replayed
+    private static volatile NRReadiness readiness = new NRReadiness();
+
+    // open spans and their local durations
+    private static final NRSpans spans = new NRSpans();
+
+    // calls, rejections, failures and agent time per API method
+    private static final NRStats stats = NRStats.INSTANCE;
+
+    // startup timing, -1 until known
+    private static volatile long initStartNanos = -1;
+    private static volatile long initBlockingNanos = -1;
+    private static volatile long timeToReadyNanos = -1;
+
+    // start() and onStarted() both count down, whichever finishes last records the startup metrics
+    private static final AtomicInteger startupMetricsPending = new AtomicInteger(2);
 
     private NRSdk() {
 
@@ -25,16 +63,209 @@ public class NRSdk {
     }
 
     public static void init(final Context context, final NRConfig config) {
+        stats.call(NRStats.Api.INIT);
+        long startNanos = System.nanoTime();
+        try {
+            start(NRInstance.getInstance(context, config), startNanos);
+        } catch (Exception e) {
+            stats.failed(NRStats.Api.INIT);
+            logger.error("error in init()", e);
+            nrInstance = null;
+        }
+    }
+
+    /**
+     * Initializes the SDK against a given backend, e.g. NRRecordingBackend to run on a plain JVM.
+     *
+     * @param config  NRConfig
+     * @param backend NRBackend
+     */
+    static void init(final NRConfig config, final NRBackend backend) {
+        stats.call(NRStats.Api.INIT);
+        long startNanos = System.nanoTime();
         try {
-            nrInstance = NRInstance.getInstance(context, config);
+            start(NRInstance.getInstance(null, config, backend), startNanos);
         } catch (Exception e) {
-            logger.error("error in init()", e.toString());
+            stats.failed(NRStats.Api.INIT);
+            logger.error("error in init()", e);
+            nrInstance = null;
+        }
+    }
+
+    private static void start(final NRInstance instance, long startNanos) {
+        // repeated init() only updates the config
+        if (instance.isStarted()) {
+            return;
+        }
+
+        synchronized (NRSdk.class) {
+            if (instance.isStarted()) {
+                return;
+            }
+
+            if (instance.getConfig().isAsyncDispatch()) {
+                dispatcher = NRDispatcher.start(instance, instance.getConfig());
+            }
+
+            initStartNanos = startNanos;
+
+            // depending on NRConfig.StartupMode, this runs now or on a background thread
+            instance.start(new Runnable() {
+                @Override
+                public void run() {
+                    onStarted(instance);
+                }
+            });
+
+            initBlockingNanos = System.nanoTime() - startNanos;
+        }
+
+        // in IMMEDIATE mode onStarted() has already run, before initBlockingNanos was known
+        onStartupMeasured(instance);
+    }
+
+    /**
+     * Forgets the started instance, buffered calls and startup timings, so tests can init() again.
+     * Threads and tasks started by the previous instance keep running.
+     */
+    static void reset() {
+        synchronized (NRSdk.class) {
+            NRInstance.reset();
             nrInstance = null;
+            dispatcher = null;
+            preInitBuffer = new NRPreInitBuffer(NRPreInitBuffer.DEFAULT_CAPACITY);
+            readiness = new NRReadiness();
+            initStartNanos = -1;
+            initBlockingNanos = -1;
+            timeToReadyNanos = -1;
+            startupMetricsPending.set(2);
+        }
+    }
+
+    /**
+     * Replaces the active config. Takes effect for settings read at call time,
+     * e.g. analytics events, while settings used to start the agent are kept.
+     *
+     * @param config Required. NRConfig
+     */
+    public static void updateConfig(NRConfig config) {
+        stats.call(NRStats.Api.UPDATE_CONFIG);
+        if (null == config) {
+            stats.rejected(NRStats.Api.UPDATE_CONFIG);
+            logger.error("error in updateConfig()", "config is null");
+            return;
+        }
+
+        if (!isSdkInitialized(NRStats.Api.UPDATE_CONFIG)) {
+            return;
+        }
+
+        try {
+            nrInstance.updateConfig(config);
+        } catch (Exception e) {
+            stats.failed(NRStats.Api.UPDATE_CONFIG);
+            logger.error("error in updateConfig()", e);
         }
     }
 
-    private static boolean isSdkInitialized() {
+    /**
+     * Called once the agent start has been attempted.
+     * Replays calls buffered during start-up and publishes the instance.
+     */
+    private static void onStarted(NRInstance instance) {
+        // publish under the buffer lock, so no call can slip in between replay and publish
+        NRPreInitBuffer buffer = preInitBuffer;
+        synchronized (buffer) {
+            if (instance.isInitialized()) {
+                buffer.replay(instance, dispatcher);
+            } else {
+                buffer.discard();
+            }
+            nrInstance = instance;
+        }
+
+        timeToReadyNanos = System.nanoTime() - initStartNanos;
+
+        onStartupMeasured(instance);
+
+        readiness.complete(instance.isInitialized());
+    }
+
+    private static void onStartupMeasured(NRInstance instance) {
+        if (startupMetricsPending.decrementAndGet() == 0 && instance.isInitialized()) {
+            recordStartupMetrics(instance);
+        }
+    }
+
+    private static void recordStartupMetrics(NRInstance instance) {
+        try {
+            instance.recordMetric("InitBlocking", "NRSdk/Startup", TimeUnit.NANOSECONDS.toMillis(initBlockingNanos));
+            instance.recordMetric("AgentStart", "NRSdk/Startup", TimeUnit.NANOSECONDS.toMillis(instance.getAgentStartNanos()));
+            instance.recordMetric("TimeToReady", "NRSdk/Startup", TimeUnit.NANOSECONDS.toMillis(timeToReadyNanos));
+        } catch (Exception e) {
+            logger.error("error in recordStartupMetrics()", e);
+        }
+    }
+
+    /**
+     * @return a future which completes with true once the agent is started and NRSdk is ready to record,
+     * or with false if the agent failed to start.
+     */
+    public static Future<Boolean> getReadyFuture() {
+        return readiness;
+    }
+
+    /**
+     * Adds a listener notified once NRSdk is ready to record.
+     * If already ready, the listener is called right away on the calling thread,
+     * otherwise on the thread that started the agent, see NRConfig.withStartupMode().
+     *
+     * @param listener Required. OnReadyListener
+     */
+    public static void addOnReadyListener(OnReadyListener listener) {
+        if (null == listener) {
+            logger.error("error in addOnReadyListener()", "listener is null");
+            return;
+        }
+
+        readiness.addListener(listener);
+    }
+
+    /**
+     * @return time in milliseconds the first init() call blocked its calling thread, -1 if not called yet
+     */
+    public static long getInitBlockingMillis() {
+        return initBlockingNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(initBlockingNanos);
+    }
+
+    /**
+     * @return time in milliseconds from the first init() call until NRSdk was ready, -1 if not ready yet
+     */
+    public static long getTimeToReadyMillis() {
+        return timeToReadyNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(timeToReadyNanos);
+    }
+
+    /**
+     * Buffers a call made before init() completed.
+     *
+     * @param call NRCall
+     * @return true if the call was buffered for replay
+     */
+    private static boolean captureBeforeInit(NRCall call) {
+        return preInitBuffer.capture(call);
+    }
+
+    /**
+     * @return true if analytics events are disabled in NRConfig, event calls then return before any validation
+     */
+    private static boolean isAnalyticsDisabled() {
+        NRInstance instance = nrInstance;
+        return null != instance && !instance.isAnalyticsEvents();
+    }
+
+    private static boolean isSdkInitialized(NRStats.Api api) {
         if (null == nrInstance) {
+            stats.rejected(api);
             logger.error("NRSdk not initialized. You must call NRSdk.init() ");
             return false;
         }
@@ -49,11 +280,13 @@ public class NRSdk {
      * @return interaction ID number which can be used for ending the interaction at a certain point
      */
     public static String startInteraction(String actionName) {
-        if (!isSdkInitialized()) {
+        stats.call(NRStats.Api.START_INTERACTION);
+        if (!isSdkInitialized(NRStats.Api.START_INTERACTION)) {
             return null;
         }
 
         if (Utils.isEmptyOrNull(actionName)) {
+            stats.rejected(NRStats.Api.START_INTERACTION);
             logger.error("error in startInteraction()", "actionName is empty OR null");
             return null;
         }
@@ -61,7 +294,8 @@ public class NRSdk {
         try {
             return nrInstance.startInteraction(actionName);
         } catch (Exception e) {
-            logger.error("error in startInteraction()", e.toString());
+            stats.failed(NRStats.Api.START_INTERACTION);
+            logger.error("error in startInteraction()", e);
             return null;
         }
     }
@@ -73,19 +307,32 @@ public class NRSdk {
      * @param interactionID ID for the interaction you want to end
      */
     public static void endInteraction(String interactionID) {
-        if (!isSdkInitialized()) {
+        stats.call(NRStats.Api.END_INTERACTION);
+        if (Utils.isEmptyOrNull(interactionID)) {
+            stats.rejected(NRStats.Api.END_INTERACTION);
+            logger.error("error in endInteraction()", "interactionID is empty OR null");
             return;
         }
 
-        if (Utils.isEmptyOrNull(interactionID)) {
-            logger.error("error in endInteraction()", "interactionID is empty OR null");
+        if (null == nrInstance && captureBeforeInit(new NRCall.EndInteraction(interactionID))) {
+            return;
+        }
+
+        if (!isSdkInitialized(NRStats.Api.END_INTERACTION)) {
+            return;
+        }
+
+        NRDispatcher d = dispatcher;
+        if (null != d) {
+            d.dispatch(new NRCall.EndInteraction(interactionID));
             return;
         }
 
         try {
             nrInstance.endInteraction(interactionID);
         } catch (Exception e) {
-            logger.error("error in endInteraction()", e.toString());
+            stats.failed(NRStats.Api.END_INTERACTION);
+            logger.error("error in endInteraction()", e);
         }
     }
 
@@ -99,19 +346,32 @@ public class NRSdk {
      *                        You could use setInteractionName at the beginning of each onCreate() method to change the name.
      */
     public static void setInteractionName(String interactionName) {
-        if (!isSdkInitialized()) {
+        stats.call(NRStats.Api.SET_INTERACTION_NAME);
+        if (Utils.isEmptyOrNull(interactionName)) {
+            stats.rejected(NRStats.Api.SET_INTERACTION_NAME);
+            logger.error("error in setInteractionName()", "interactionName is empty OR null");
             return;
         }
 
-        if (Utils.isEmptyOrNull(interactionName)) {
-            logger.error("error in setInteractionName()", "interactionName is empty OR null");
+        if (null == nrInstance && captureBeforeInit(new NRCall.InteractionName(interactionName))) {
+            return;
+        }
+
+        if (!isSdkInitialized(NRStats.Api.SET_INTERACTION_NAME)) {
+            return;
+        }
+
+        NRDispatcher d = dispatcher;
+        if (null != d) {
+            d.dispatch(new NRCall.InteractionName(interactionName));
             return;
         }
 
         try {
             nrInstance.setInteractionName(interactionName);
         } catch (Exception e) {
-            logger.error("error in setInteractionName()", e.toString());
+            stats.failed(NRStats.Api.SET_INTERACTION_NAME);
+            logger.error("error in setInteractionName()", e);
         }
     }
 
@@ -121,22 +381,47 @@ public class NRSdk {
      * @param eventType       Required. The type of event.
      * @param eventName       Optional. Use this parameter to name the event.
      * @param eventAttributes Optional. A map that includes a list of attributes
-     * @return true if the event is recorded successfully, or false if not.
+     * @return true if the event is recorded successfully, or false if not, e.g. when dropped by
+     * the event sampling or rate limits set in NRConfig.
      */
     public static boolean recordCustomEvent(String eventType, String eventName, Map<String, Object> eventAttributes) {
-        if (!isSdkInitialized()) {
+        stats.call(NRStats.Api.RECORD_CUSTOM_EVENT);
+        if (isAnalyticsDisabled()) {
             return false;
         }
 
         if (Utils.isEmptyOrNull(eventType)) {
+            stats.rejected(NRStats.Api.RECORD_CUSTOM_EVENT);
             logger.error("error in recordCustomEvent()", "eventType is empty OR null");
             return false;
         }
 
+        double sampleRate = admitEvent(eventType);
+        if (sampleRate == NREventAdmission.DROPPED) {
+            return false;
+        }
+        if (sampleRate < NREventAdmission.KEPT) {
+            eventAttributes = NREventAdmission.withSampleRate(eventAttributes, sampleRate);
+        }
+
+        if (null == nrInstance && captureBeforeInit(new NRCall.CustomEvent(eventType, eventName, eventAttributes))) {
+            return true;
+        }
+
+        if (!isSdkInitialized(NRStats.Api.RECORD_CUSTOM_EVENT)) {
+            return false;
+        }
+
+        NRDispatcher d = dispatcher;
+        if (null != d) {
+            return d.dispatch(new NRCall.CustomEvent(eventType, eventName, eventAttributes));
+        }
+
         try {
             return nrInstance.recordCustomEvent(eventType, eventName, eventAttributes);
         } catch (Exception e) {
-            logger.error("error in recordCustomEvent()", e.toString());
+            stats.failed(NRStats.Api.RECORD_CUSTOM_EVENT);
+            logger.error("error in recordCustomEvent()", e);
             return false;
         }
     }
@@ -146,23 +431,48 @@ public class NRSdk {
      *
      * @param eventName       Required. The name you want to give to the breadcrumb event.
      * @param eventAttributes Optional. A map that includes a list of attributes of the breadcrumb event.
-     * @return true if the event is recorded successfully, or false if not.
+     * @return true if the event is recorded successfully, or false if not, e.g. when dropped by
+     * the "MobileBreadcrumb" sampling or rate limits set in NRConfig.
      */
     public static boolean recordBreadcrumb(String eventName, Map<String, Object> eventAttributes) {
-        if (!isSdkInitialized()) {
+        stats.call(NRStats.Api.RECORD_BREADCRUMB);
+        if (isAnalyticsDisabled()) {
             return false;
         }
 
         if (Utils.isEmptyOrNull(eventName)) {
+            stats.rejected(NRStats.Api.RECORD_BREADCRUMB);
             logger.error("error in recordBreadcrumb()", "eventName is empty OR null");
             return false;
         }
 
+        double sampleRate = admitEvent(NREventAdmission.BREADCRUMB_EVENT_TYPE);
+        if (sampleRate == NREventAdmission.DROPPED) {
+            return false;
+        }
+        if (sampleRate < NREventAdmission.KEPT) {
+            eventAttributes = NREventAdmission.withSampleRate(eventAttributes, sampleRate);
+        }
+
+        if (null == nrInstance && captureBeforeInit(new NRCall.Breadcrumb(eventName, eventAttributes))) {
+            return true;
+        }
+
+        if (!isSdkInitialized(NRStats.Api.RECORD_BREADCRUMB)) {
+            return false;
+        }
+
+        // the breadcrumb buffer is cheaper than a hand-off to the dispatcher
+        NRDispatcher d = dispatcher;
+        if (null != d && !nrInstance.isBufferingBreadcrumbs()) {
+            return d.dispatch(new NRCall.Breadcrumb(eventName, eventAttributes));
+        }
+
         try {
-            return nrInstance.recordBreadcrumb(eventName, eventAttributes)
-                    ;
+            return nrInstance.recordBreadcrumb(eventName, eventAttributes);
         } catch (Exception e) {
-            logger.error("error in recordBreadcrumb()", e.toString());
+            stats.failed(NRStats.Api.RECORD_BREADCRUMB);
+            logger.error("error in recordBreadcrumb()", e);
             return false;
         }
     }
@@ -171,14 +481,16 @@ public class NRSdk {
      * Throws a demo run-time exception named java.lang.RuntimeException to test New Relic crash reporting.
      */
     public static void crashNow() {
-        if (!isSdkInitialized()) {
+        stats.call(NRStats.Api.CRASH_NOW);
+        if (!isSdkInitialized(NRStats.Api.CRASH_NOW)) {
             return;
         }
 
         try {
             nrInstance.crashNow();
         } catch (Exception e) {
-            logger.error("error in crashNow()", e.toString());
+            stats.failed(NRStats.Api.CRASH_NOW);
+            logger.error("error in crashNow()", e);
         }
     }
 
@@ -188,11 +500,13 @@ public class NRSdk {
      * @param message Optional. A message attached to the exception.
      */
     public static void crashNow(String message) {
-        if (!isSdkInitialized()) {
+        stats.call(NRStats.Api.CRASH_NOW);
+        if (!isSdkInitialized(NRStats.Api.CRASH_NOW)) {
             return;
         }
 
         if (Utils.isEmptyOrNull(message)) {
+            stats.rejected(NRStats.Api.CRASH_NOW);
             logger.error("error in crashNow()", "message is empty OR null");
             return;
         }
@@ -201,7 +515,8 @@ public class NRSdk {
         try {
             nrInstance.crashNow(message);
         } catch (Exception e) {
-            logger.error("error in crashNow()", e.toString());
+            stats.failed(NRStats.Api.CRASH_NOW);
+            logger.error("error in crashNow()", e);
         }
     }
 
@@ -209,20 +524,23 @@ public class NRSdk {
      * @return Returns ID for current session
      */
     public static String currentSessionId() {
-        if (!isSdkInitialized()) {
+        stats.call(NRStats.Api.CURRENT_SESSION_ID);
+        if (!isSdkInitialized(NRStats.Api.CURRENT_SESSION_ID)) {
             return null;
         }
 
         try {
             return nrInstance.currentSessionId();
         } catch (Exception e) {
-            logger.error("error in currentSessionId()", e.toString());
+            stats.failed(NRStats.Api.CURRENT_SESSION_ID);
+            logger.error("error in currentSessionId()", e);
             return null;
         }
     }
 
     /**
      * Tracks networks requests.
+     * OkHttp clients can add NRInterceptor from the :okhttp module instead of calling this by hand.
      *
      * @param url           Required. The URL of the request.
      * @param httpMethod    Required. The HTTP method used, such as GET or POST.
@@ -234,48 +552,44 @@ public class NRSdk {
      * @param responseBody  Optional. The response body of the HTTP response. The response body will be truncated and included in an HTTP Error metric if the HTTP transaction is an error.
      */
     public static void noticeHttpTransaction(String url, String httpMethod, int statusCode, long startTime, long endTime, long bytesSent, long bytesReceived, String responseBody) {
-        if (!isSdkInitialized()) {
-            return;
-        }
-
+        stats.call(NRStats.Api.NOTICE_HTTP_TRANSACTION);
         if (Utils.isEmptyOrNull(url)) {
+            stats.rejected(NRStats.Api.NOTICE_HTTP_TRANSACTION);
             logger.error("error in noticeHttpTransaction()", "url is empty OR null");
             return;
         }
 
         if (Utils.isEmptyOrNull(httpMethod)) {
+            stats.rejected(NRStats.Api.NOTICE_HTTP_TRANSACTION);
             logger.error("error in noticeHttpTransaction()", "httpMethod must not be empty or null");
             return;
         }
 
+        // the capture limit is not known before init(), the body is cut when the call is replayed
+        if (null == nrInstance && captureBeforeInit(new NRCall.HttpTransaction(url, httpMethod, statusCode, startTime, endTime, bytesSent, bytesReceived, responseBody, false))) {
+            return;
+        }
+
+        // drop or cut the body before it is queued
+        responseBody = NRBodyCapture.limit(statusCode, responseBody, NRBodyCapture.captureLimit());
+
+        if (!isSdkInitialized(NRStats.Api.NOTICE_HTTP_TRANSACTION)) {
+            return;
+        }
+
+        // aggregation is cheaper than a hand-off to the dispatcher
+        NRDispatcher d = dispatcher;
+        if (null != d && !(nrInstance.isAggregatingHttp() && !NRHttpAggregator.isError(statusCode))) {
+            d.dispatch(new NRCall.HttpTransaction(url, httpMethod, statusCode, startTime, endTime, bytesSent, bytesReceived, responseBody, true));
+            return;
+        }
+
         try {
             nrInstance.noticeHttpTransaction(url, httpMethod, statusCode, startTime, endTime, bytesSent, bytesReceived, responseBody);
         } catch (Exception e) {
-            logger.error("error in noticeHttpTransaction()", e.toString());
-        }
-
-        /*Example
-        public class CustomHttpMetricsLogger implements Interceptor {
-
-            @Override
-            public Response intercept(Chain chain) throws IOException {
-                Request request = chain.request();
-                //collect request start time
-                long t1 = System.nanoTime();
-                //get the size of the request body
-                long requestSize = null == request.body() ? 0 : request.body().contentLength();
-                //proceed with the request
-                Response response = chain.proceed(request);
-                //capture the time when response returns
-                long t2 = System.nanoTime();
-                long responseSize = null == response.body() ? 0 : response.body().contentLength();
-                //tell new relic to notice this request
-                NewRelic.noticeHttpTransaction(request.urlString(), request.method(), response.code(), t1, t2, requestSize, responseSize);
-                //return response for processing
-                return response;
-            }
-        }*/
-
+            stats.failed(NRStats.Api.NOTICE_HTTP_TRANSACTION);
+            logger.error("error in noticeHttpTransaction()", e);
+        }
     }
 
     public static boolean recordHandledException(Exception exceptionToHandle) {
@@ -290,20 +604,32 @@ public class NRSdk {
      * @return true if the handled exception was recorded successfully, or false if not.
      */
     public static boolean recordHandledException(Exception exceptionToHandle, Map<String, Object> exceptionAttributes) {
+        stats.call(NRStats.Api.RECORD_HANDLED_EXCEPTION);
 
-        if (!isSdkInitialized()) {
+        if (null == exceptionToHandle) {
+            stats.rejected(NRStats.Api.RECORD_HANDLED_EXCEPTION);
+            logger.error("error in recordHandledException()", "exceptionToHandle is null");
             return false;
         }
 
-        if (null == exceptionToHandle) {
-            logger.error("error in recordHandledException()", "exceptionToHandle is null");
+        if (null == nrInstance && captureBeforeInit(new NRCall.HandledException(exceptionToHandle, exceptionAttributes))) {
+            return true;
+        }
+
+        if (!isSdkInitialized(NRStats.Api.RECORD_HANDLED_EXCEPTION)) {
             return false;
         }
 
+        NRDispatcher d = dispatcher;
+        if (null != d) {
+            return d.dispatch(new NRCall.HandledException(exceptionToHandle, exceptionAttributes));
+        }
+
         try {
             return nrInstance.recordHandledException(exceptionToHandle, exceptionAttributes);
         } catch (Exception e) {
-            logger.error("error in recordHandledException()", e.toString());
+            stats.failed(NRStats.Api.RECORD_HANDLED_EXCEPTION);
+            logger.error("error in recordHandledException()", e);
             return false;
         }
 
@@ -315,19 +641,32 @@ public class NRSdk {
      * @param maxBufferTimeInSec Required. The maximum time (in seconds) that the agent should store events in memory. The default value harvest cycle length is 600 seconds.
      */
     public static void setMaxEventBufferTime(int maxBufferTimeInSec) {
-        if (!isSdkInitialized()) {
+        stats.call(NRStats.Api.SET_MAX_EVENT_BUFFER_TIME);
+        if (maxBufferTimeInSec < 60 || maxBufferTimeInSec > 600) {
+            stats.rejected(NRStats.Api.SET_MAX_EVENT_BUFFER_TIME);
+            logger.error("setMaxEventBufferTime()", "maxEventBufferTime value should be minimum 60 seconds OR maximum 600 seconds");
             return;
         }
 
-        if (maxBufferTimeInSec < 60 || maxBufferTimeInSec > 600) {
-            logger.error("setMaxEventBufferTime()", "maxEventBufferTime value should be minimum 60 seconds OR maximum 600 seconds");
+        if (null == nrInstance && captureBeforeInit(new NRCall.MaxEventBufferTime(maxBufferTimeInSec))) {
+            return;
+        }
+
+        if (!isSdkInitialized(NRStats.Api.SET_MAX_EVENT_BUFFER_TIME)) {
+            return;
+        }
+
+        NRDispatcher d = dispatcher;
+        if (null != d) {
+            d.dispatch(new NRCall.MaxEventBufferTime(maxBufferTimeInSec));
             return;
         }
 
         try {
             nrInstance.setMaxEventBufferTime(maxBufferTimeInSec);
         } catch (Exception e) {
-            logger.error("error in setMaxEventBufferTime()", e.toString());
+            stats.failed(NRStats.Api.SET_MAX_EVENT_BUFFER_TIME);
+            logger.error("error in setMaxEventBufferTime()", e);
         }
     }
 
@@ -338,19 +677,32 @@ public class NRSdk {
      * @param maxEventPoolSize Required. Maximum size of event pool.
      */
     public static void setMaxEventPoolSize(int maxEventPoolSize) {
-        if (!isSdkInitialized()) {
+        stats.call(NRStats.Api.SET_MAX_EVENT_POOL_SIZE);
+        if (maxEventPoolSize <= 0 || maxEventPoolSize > 1000) {
+            stats.rejected(NRStats.Api.SET_MAX_EVENT_POOL_SIZE);
+            logger.error("setMaxEventPoolSize()", "maxEventPoolSize value should be minimum 1 OR maximum 1000");
             return;
         }
 
-        if (maxEventPoolSize <= 0 || maxEventPoolSize > 1000) {
-            logger.error("setMaxEventPoolSize()", "maxEventPoolSize value should be minimum 1 OR maximum 1000");
+        if (null == nrInstance && captureBeforeInit(new NRCall.MaxEventPoolSize(maxEventPoolSize))) {
+            return;
+        }
+
+        if (!isSdkInitialized(NRStats.Api.SET_MAX_EVENT_POOL_SIZE)) {
+            return;
+        }
+
+        NRDispatcher d = dispatcher;
+        if (null != d) {
+            d.dispatch(new NRCall.MaxEventPoolSize(maxEventPoolSize));
             return;
         }
 
         try {
             nrInstance.setMaxEventPoolSize(maxEventPoolSize);
         } catch (Exception e) {
-            logger.error("error in setMaxEventPoolSize()", e.toString());
+            stats.failed(NRStats.Api.SET_MAX_EVENT_POOL_SIZE);
+            logger.error("error in setMaxEventPoolSize()", e);
         }
     }
 
@@ -361,19 +713,31 @@ public class NRSdk {
      * @return true if it succeeds, or false if it doesn't.
      */
     public static boolean setUserId(String userId) {
-        if (!isSdkInitialized()) {
+        stats.call(NRStats.Api.SET_USER_ID);
+        if (Utils.isEmptyOrNull(userId)) {
+            stats.rejected(NRStats.Api.SET_USER_ID);
+            logger.error("error in setUserId()", "userId is empty OR null");
             return false;
         }
 
-        if (Utils.isEmptyOrNull(userId)) {
-            logger.error("error in setUserId()", "userId is empty OR null");
+        if (null == nrInstance && captureBeforeInit(new NRCall.UserId(userId))) {
+            return true;
+        }
+
+        if (!isSdkInitialized(NRStats.Api.SET_USER_ID)) {
             return false;
         }
 
+        NRDispatcher d = dispatcher;
+        if (null != d) {
+            return d.dispatch(new NRCall.UserId(userId));
+        }
+
         try {
             return nrInstance.setUserId(userId);
         } catch (Exception e) {
-            logger.error("error in setUserId()", e.toString());
+            stats.failed(NRStats.Api.SET_USER_ID);
+            logger.error("error in setUserId()", e);
             return false;
         }
     }
@@ -389,29 +753,520 @@ public class NRSdk {
      * @param exceptionFailure exception that occurred
      */
     public static void noticeNetworkFailure(String url, String httpMethod, long startTime, long endTime, Exception exceptionFailure) {
-        if (!isSdkInitialized()) {
-            return;
-        }
-
+        stats.call(NRStats.Api.NOTICE_NETWORK_FAILURE);
         if (Utils.isEmptyOrNull(url)) {
+            stats.rejected(NRStats.Api.NOTICE_NETWORK_FAILURE);
             logger.error("error in noticeNetworkFailure()", "url is empty OR null");
             return;
         }
 
         if (Utils.isEmptyOrNull(httpMethod)) {
+            stats.rejected(NRStats.Api.NOTICE_NETWORK_FAILURE);
             logger.error("error in noticeNetworkFailure()", "httpMethod is empty OR null");
             return;
         }
 
         if (null == exceptionFailure) {
+            stats.rejected(NRStats.Api.NOTICE_NETWORK_FAILURE);
             logger.error("exceptionFailure is null");
             return;
         }
 
+        if (null == nrInstance && captureBeforeInit(new NRCall.NetworkFailure(url, httpMethod, startTime, endTime, exceptionFailure))) {
+            return;
+        }
+
+        if (!isSdkInitialized(NRStats.Api.NOTICE_NETWORK_FAILURE)) {
+            return;
+        }
+
+        NRDispatcher d = dispatcher;
+        if (null != d) {
+            d.dispatch(new NRCall.NetworkFailure(url, httpMethod, startTime, endTime, exceptionFailure));
+            return;
+        }
+
         try {
             nrInstance.noticeNetworkFailure(url, httpMethod, startTime, endTime, exceptionFailure);
         } catch (Exception e) {
-            logger.error("exception in noticeNetworkFailure()", e.toString());
+            stats.failed(NRStats.Api.NOTICE_NETWORK_FAILURE);
+            logger.error("exception in noticeNetworkFailure()", e);
+        }
+    }
+
+    /**
+     * Records a custom metric with a value of 1.
+     *
+     * @param name     Required. The name for the metric.
+     * @param category Required. The metric category name.
+     */
+    public static void recordMetric(String name, String category) {
+        recordMetric(name, category, 1.0);
+    }
+
+    /**
+     * Records a custom metric (arbitrary numerical data).
+     * With NRConfig.withMetricAggregation() values are pre-aggregated and flushed periodically.
+     *
+     * @param name     Required. The name for the metric.
+     * @param category Required. The metric category name.
+     * @param value    Required. The value of the metric.
+     */
+    public static void recordMetric(String name, String category, double value) {
+        stats.call(NRStats.Api.RECORD_METRIC);
+        if (Utils.isEmptyOrNull(name)) {
+            stats.rejected(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", "name is empty OR null");
+            return;
+        }
+
+        if (Utils.isEmptyOrNull(category)) {
+            stats.rejected(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", "category is empty OR null");
+            return;
+        }
+
+        if (null == nrInstance && captureBeforeInit(new NRCall.Metric(name, category, value))) {
+            return;
+        }
+
+        if (!isSdkInitialized(NRStats.Api.RECORD_METRIC)) {
+            return;
+        }
+
+        // aggregation is cheaper than a hand-off to the dispatcher
+        NRDispatcher d = dispatcher;
+        if (null != d && !nrInstance.isAggregatingMetrics()) {
+            d.dispatch(new NRCall.Metric(name, category, value));
+            return;
+        }
+
+        try {
+            nrInstance.recordMetric(name, category, value);
+        } catch (Exception e) {
+            stats.failed(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", e);
+        }
+    }
+
+    /**
+     * Records an already aggregated custom metric.
+     *
+     * @param name           Required. The name for the metric.
+     * @param category       Required. The metric category name.
+     * @param count          Required. The number of times the metric was recorded.
+     * @param totalValue     Required. The sum of all recorded values.
+     * @param exclusiveValue Required. The part of totalValue not spent in child metrics.
+     */
+    public static void recordMetric(String name, String category, int count, double totalValue, double exclusiveValue) {
+        stats.call(NRStats.Api.RECORD_METRIC);
+        if (Utils.isEmptyOrNull(name)) {
+            stats.rejected(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", "name is empty OR null");
+            return;
+        }
+
+        if (Utils.isEmptyOrNull(category)) {
+            stats.rejected(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", "category is empty OR null");
+            return;
+        }
+
+        if (count <= 0) {
+            stats.rejected(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", "count should be greater than 0");
+            return;
+        }
+
+        if (null == nrInstance && captureBeforeInit(new NRCall.MetricSummary(name, category, count, totalValue, exclusiveValue))) {
+            return;
+        }
+
+        if (!isSdkInitialized(NRStats.Api.RECORD_METRIC)) {
+            return;
+        }
+
+        NRDispatcher d = dispatcher;
+        if (null != d) {
+            d.dispatch(new NRCall.MetricSummary(name, category, count, totalValue, exclusiveValue));
+            return;
+        }
+
+        try {
+            nrInstance.recordMetric(name, category, count, totalValue, exclusiveValue);
+        } catch (Exception e) {
+            stats.failed(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", e);
+        }
+    }
+
+    /**
+     * Records a custom metric value with a unit. The value is converted to the unit's canonical
+     * unit (bytes, seconds, ...) first, so it aggregates with values recorded in related units.
+     *
+     * @param name      Required. The name for the metric.
+     * @param category  Required. The metric category name.
+     * @param value     Required. The value of the metric, in valueUnit.
+     * @param valueUnit Required. The unit of value.
+     */
+    public static void recordMetric(String name, String category, double value, NRMetricUnit valueUnit) {
+        stats.call(NRStats.Api.RECORD_METRIC);
+        if (Utils.isEmptyOrNull(name)) {
+            stats.rejected(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", "name is empty OR null");
+            return;
+        }
+
+        if (Utils.isEmptyOrNull(category)) {
+            stats.rejected(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", "category is empty OR null");
+            return;
+        }
+
+        if (null == valueUnit) {
+            stats.rejected(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", "valueUnit is null");
+            return;
+        }
+
+        final double canonicalValue = valueUnit.toCanonical(value);
+        final MetricUnit countUnit = MetricUnit.OPERATIONS;
+
+        if (null == nrInstance && captureBeforeInit(new NRCall.UnitMetric(name, category, canonicalValue, countUnit, valueUnit.getCanonicalUnit()))) {
+            return;
+        }
+
+        if (!isSdkInitialized(NRStats.Api.RECORD_METRIC)) {
+            return;
+        }
+
+        // aggregation is cheaper than a hand-off to the dispatcher
+        NRDispatcher d = dispatcher;
+        if (null != d && !nrInstance.isAggregatingMetrics()) {
+            d.dispatch(new NRCall.UnitMetric(name, category, canonicalValue, countUnit, valueUnit.getCanonicalUnit()));
+            return;
+        }
+
+        try {
+            nrInstance.recordMetric(name, category, canonicalValue, countUnit, valueUnit.getCanonicalUnit());
+        } catch (Exception e) {
+            stats.failed(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", e);
+        }
+    }
+
+    /**
+     * Records an already aggregated custom metric with units.
+     * Total and exclusive values are converted to the canonical unit of valueUnit.
+     *
+     * @param name           Required. The name for the metric.
+     * @param category       Required. The metric category name.
+     * @param count          Required. The number of times the metric was recorded.
+     * @param totalValue     Required. The sum of all recorded values, in valueUnit.
+     * @param exclusiveValue Required. The part of totalValue not spent in child metrics, in valueUnit.
+     * @param countUnit      Optional. The unit of count, such as OPERATIONS.
+     * @param valueUnit      Optional. The unit of the values, such as MILLISECONDS or BYTES.
+     */
+    public static void recordMetric(String name, String category, int count, double totalValue, double exclusiveValue, NRMetricUnit countUnit, NRMetricUnit valueUnit) {
+        stats.call(NRStats.Api.RECORD_METRIC);
+        if (Utils.isEmptyOrNull(name)) {
+            stats.rejected(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", "name is empty OR null");
+            return;
+        }
+
+        if (Utils.isEmptyOrNull(category)) {
+            stats.rejected(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", "category is empty OR null");
+            return;
+        }
+
+        if (count <= 0) {
+            stats.rejected(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", "count should be greater than 0");
+            return;
+        }
+
+        final double canonicalTotal = null == valueUnit ? totalValue : valueUnit.toCanonical(totalValue);
+        final double canonicalExclusive = null == valueUnit ? exclusiveValue : valueUnit.toCanonical(exclusiveValue);
+        final MetricUnit canonicalCountUnit = null == countUnit ? null : countUnit.getCanonicalUnit();
+        final MetricUnit canonicalValueUnit = null == valueUnit ? null : valueUnit.getCanonicalUnit();
+
+        if (null == nrInstance && captureBeforeInit(new NRCall.UnitMetricSummary(name, category, count, canonicalTotal, canonicalExclusive, canonicalCountUnit, canonicalValueUnit))) {
+            return;
+        }
+
+        if (!isSdkInitialized(NRStats.Api.RECORD_METRIC)) {
+            return;
+        }
+
+        NRDispatcher d = dispatcher;
+        if (null != d) {
+            d.dispatch(new NRCall.UnitMetricSummary(name, category, count, canonicalTotal, canonicalExclusive, canonicalCountUnit, canonicalValueUnit));
+            return;
+        }
+
+        try {
+            nrInstance.recordMetric(name, category, count, canonicalTotal, canonicalExclusive, canonicalCountUnit, canonicalValueUnit);
+        } catch (Exception e) {
+            stats.failed(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", e);
+        }
+    }
+
+    /**
+     * Creates a reusable handle for a metric. Name and category are validated once here,
+     * recording through the handle skips validation and does not allocate.
+     *
+     * @param name     Required. The name for the metric.
+     * @param category Required. The metric category name.
+     * @return NRMetricHandle, or null if name or category is invalid
+     */
+    public static NRMetricHandle metric(String name, String category) {
+        if (Utils.isEmptyOrNull(name)) {
+            logger.error("error in metric()", "name is empty OR null");
+            return null;
+        }
+
+        if (Utils.isEmptyOrNull(category)) {
+            logger.error("error in metric()", "category is empty OR null");
+            return null;
+        }
+
+        return new NRMetricHandle(name, category, null);
+    }
+
+    /**
+     * Creates a reusable handle for a metric with a unit, see {@link #metric(String, String)}.
+     *
+     * @param name      Required. The name for the metric.
+     * @param category  Required. The metric category name.
+     * @param valueUnit Required. The unit values are recorded in.
+     * @return NRMetricHandle, or null if an argument is invalid
+     */
+    public static NRMetricHandle metric(String name, String category, NRMetricUnit valueUnit) {
+        if (Utils.isEmptyOrNull(name)) {
+            logger.error("error in metric()", "name is empty OR null");
+            return null;
+        }
+
+        if (Utils.isEmptyOrNull(category)) {
+            logger.error("error in metric()", "category is empty OR null");
+            return null;
+        }
+
+        if (null == valueUnit) {
+            logger.error("error in metric()", "valueUnit is null");
+            return null;
+        }
+
+        return new NRMetricHandle(name, category, valueUnit);
+    }
+
+    /**
+     * Creates a reusable handle for a custom event type. The type is validated once here,
+     * recording through the handle skips validation.
+     *
+     * @param eventType Required. The type of event.
+     * @return NREventHandle, or null if eventType is invalid
+     */
+    public static NREventHandle eventType(String eventType) {
+        if (Utils.isEmptyOrNull(eventType)) {
+            logger.error("error in eventType()", "eventType is empty OR null");
+            return null;
+        }
+
+        return new NREventHandle(eventType);
+    }
+
+    /**
+     * Starts a span backed by an interaction, see {@link NRSpan}.
+     *
+     * @param name Required. The name you want to give to the interaction.
+     * @return NRSpan to close once the work is done, or null if name is invalid
+     */
+    public static NRSpan startSpan(String name) {
+        if (Utils.isEmptyOrNull(name)) {
+            logger.error("error in startSpan()", "name is empty OR null");
+            return null;
+        }
+
+        return spans.start(name);
+    }
+
+    /**
+     * @param name span path, e.g. "Checkout/LoadCart"
+     * @return durations in milliseconds of the closed spans of that name, null if there were none
+     */
+    public static StripedStats.Snapshot getSpanStats(String name) {
+        return spans.getStats(name);
+    }
+
+    /**
+     * @return number of spans started and not closed yet, not counting leaked spans
+     */
+    public static int getOpenSpanCount() {
+        return spans.getOpenCount();
+    }
+
+    /**
+     * @return number of spans reported as leaked, see NRConfig.withSpanLeakThreshold()
+     */
+    public static long getLeakedSpanCount() {
+        return spans.getLeakedCount();
+    }
+
+    /**
+     * @return calls, rejected and failed calls, and time spent in the agent per API method
+     */
+    public static NRStats.Snapshot getStats() {
+        return stats.snapshot();
+    }
+
+    /**
+     * Records through a pre-validated metric handle.
+     *
+     * @param value value, already in the handle's canonical unit
+     */
+    static void record(NRMetricHandle handle, double value) {
+        stats.call(NRStats.Api.RECORD_METRIC);
+        NRInstance instance = nrInstance;
+        if (null == instance) {
+            if (captureBeforeInit(metricCall(handle, value)) || !isSdkInitialized(NRStats.Api.RECORD_METRIC)) {
+                return;
+            }
+            instance = nrInstance;
+        }
+
+        // aggregation is cheaper than a hand-off to the dispatcher
+        NRDispatcher d = dispatcher;
+        if (null != d && !instance.isAggregatingMetrics()) {
+            d.dispatch(metricCall(handle, value));
+            return;
+        }
+
+        try {
+            if (null == handle.canonicalValueUnit) {
+                instance.recordMetric(handle.name, handle.category, value);
+            } else {
+                instance.recordMetric(handle.name, handle.category, value, handle.canonicalCountUnit, handle.canonicalValueUnit);
+            }
+        } catch (Exception e) {
+            stats.failed(NRStats.Api.RECORD_METRIC);
+            logger.error("error in recordMetric()", e);
+        }
+    }
+
+    private static NRCall metricCall(NRMetricHandle handle, double value) {
+        if (null == handle.canonicalValueUnit) {
+            return new NRCall.Metric(handle.name, handle.category, value);
         }
+        return new NRCall.UnitMetric(handle.name, handle.category, value, handle.canonicalCountUnit, handle.canonicalValueUnit);
+    }
+
+    /**
+     * Records through a pre-validated event type handle.
+     */
+    static boolean record(NREventHandle handle, String eventName, Map<String, Object> eventAttributes) {
+        stats.call(NRStats.Api.RECORD_CUSTOM_EVENT);
+        NRInstance instance = nrInstance;
+        if (null != instance && !instance.isAnalyticsEvents()) {
+            return false;
+        }
+
+        double sampleRate = admitEvent(handle.eventType);
+        if (sampleRate == NREventAdmission.DROPPED) {
+            return false;
+        }
+        if (sampleRate < NREventAdmission.KEPT) {
+            eventAttributes = NREventAdmission.withSampleRate(eventAttributes, sampleRate);
+        }
+
+        if (null == instance) {
+            if (captureBeforeInit(new NRCall.CustomEvent(handle.eventType, eventName, eventAttributes))) {
+                return true;
+            }
+
+            if (!isSdkInitialized(NRStats.Api.RECORD_CUSTOM_EVENT)) {
+                return false;
+            }
+            instance = nrInstance;
+        }
+
+        NRDispatcher d = dispatcher;
+        if (null != d) {
+            return d.dispatch(new NRCall.CustomEvent(handle.eventType, eventName, eventAttributes));
+        }
+
+        try {
+            return instance.recordCustomEvent(handle.eventType, eventName, eventAttributes);
+        } catch (Exception e) {
+            stats.failed(NRStats.Api.RECORD_CUSTOM_EVENT);
+            logger.error("error in recordCustomEvent()", e);
+            return false;
+        }
+    }
+
+    /**
+     * Applies the per event type sampling and rate limits from NRConfig.
+     *
+     * @return NREventAdmission.DROPPED, KEPT or the sample rate the event was kept with
+     */
+    private static double admitEvent(String eventType) {
+        NRInstance instance = NRInstance.getInstance();
+        return null == instance ? NREventAdmission.KEPT : instance.getEventAdmission().admit(eventType);
+    }
+
+    /**
+     * Sets how many calls are buffered before init() completes. When full, the oldest call is dropped.
+     * Recording methods called before init() return true once their call is buffered.
+     * Must be called before init() to take effect.
+     *
+     * @param capacity Required. Number of buffered calls, 0 disables buffering. The default value is 256.
+     */
+    public static void setPreInitBufferCapacity(int capacity) {
+        if (capacity < 0 || capacity > NRPreInitBuffer.MAX_CAPACITY) {
+            logger.error("setPreInitBufferCapacity()", "capacity value should be minimum 0 OR maximum " + NRPreInitBuffer.MAX_CAPACITY);
+            return;
+        }
+
+        preInitBuffer.setCapacity(capacity);
+    }
+
+    /**
+     * @return number of calls buffered before init() completed
+     */
+    public static long getPreInitCapturedCount() {
+        return preInitBuffer.getCapturedCount();
+    }
+
+    /**
+     * @return number of buffered calls replayed into the agent
+     */
+    public static long getPreInitReplayedCount() {
+        return preInitBuffer.getReplayedCount();
+    }
+
+    /**
+     * @return number of buffered calls dropped because the buffer was full or the agent failed to start
+     */
+    public static long getPreInitDroppedCount() {
+        return preInitBuffer.getDroppedCount();
+    }
+
+    /**
+     * @return number of events dropped by the event sample rates set in NRConfig
+     */
+    public static long getEventsSampledOutCount() {
+        NRInstance instance = NRInstance.getInstance();
+        return null == instance ? 0 : instance.getEventAdmission().getSampledOutCount();
+    }
+
+    /**
+     * @return number of events dropped by the event rate limits set in NRConfig
+     */
+    public static long getEventsRateLimitedCount() {
+        NRInstance instance = NRInstance.getInstance();
+        return null == instance ? 0 : instance.getEventAdmission().getRateLimitedCount();
     }
 }
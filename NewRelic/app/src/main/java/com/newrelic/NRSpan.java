@@ -0,0 +1,137 @@
+package com.newrelic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A timed span of work, created by {@link NRSdk#startSpan(String)}. A root span runs as an
+ * interaction of the agent, child spans are timed locally. Use with try-with-resources:
+ * <pre>
+ * try (NRSpan span = NRSdk.startSpan("Checkout")) {
+ *     try (NRSpan child = span.startChild("LoadCart")) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * Durations are recorded as metrics in the "NRSdk/Spans" category, named by the span path
+ * (e.g. "Checkout/LoadCart"), and kept locally, see {@link NRSdk#getSpanStats(String)}.
+ * Spans left open past the leak threshold set in NRConfig are reported.
+ */
+public final class NRSpan implements AutoCloseable {
+
+    private final NRSpans registry;
+    private final NRSpan parent;
+    private final String name;
+    private final String interactionID;
+    private final long startNanos;
+    private volatile long endNanos = -1;
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /* open children, closed along with this span */
+    private List<NRSpan> children;
+
+    NRSpan(NRSpans registry, NRSpan parent, String name, String interactionID) {
+        this.registry = registry;
+        this.parent = parent;
+        this.name = name;
+        this.interactionID = interactionID;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts a child span, timed within this one.
+     *
+     * @param name Required. Name of the child span.
+     * @return NRSpan, or null if name is invalid
+     */
+    public NRSpan startChild(String name) {
+        return registry.startChild(this, name);
+    }
+
+    /**
+     * Ends the span, and any of its children still open. Only the first call has an effect.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        endNanos = System.nanoTime();
+
+        List<NRSpan> open;
+        synchronized (this) {
+            open = children;
+            children = null;
+        }
+        if (null != open) {
+            for (NRSpan child : open) {
+                child.close();
+            }
+        }
+
+        if (null != parent) {
+            parent.removeChild(this);
+        }
+        registry.onClosed(this);
+    }
+
+    synchronized boolean addChild(NRSpan child) {
+        if (closed.get()) {
+            return false;
+        }
+        if (null == children) {
+            children = new ArrayList<>(2);
+        }
+        children.add(child);
+        return true;
+    }
+
+    private synchronized void removeChild(NRSpan child) {
+        if (null != children) {
+            children.remove(child);
+        }
+    }
+
+    /**
+     * @return span path, e.g. "Checkout/LoadCart"
+     */
+    public String getName() {
+        return name;
+    }
+
+    public NRSpan getParent() {
+        return parent;
+    }
+
+    /**
+     * @return interaction ID of a root span, null for child spans or if the interaction was not started
+     */
+    public String getInteractionID() {
+        return interactionID;
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    /**
+     * @return duration in nanoseconds, or time since start while the span is open
+     */
+    public long getDurationNanos() {
+        long end = endNanos;
+        return (end < 0 ? System.nanoTime() : end) - startNanos;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + TimeUnit.NANOSECONDS.toMillis(getDurationNanos()) + " ms" + (isOpen() ? ", open)" : ")");
+    }
+}
@@ -0,0 +1,179 @@
+package com.newrelic;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+import com.newrelic.utils.StripedStats;
+import com.newrelic.utils.Utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of open NRSpans, with the local duration aggregate and the leak check.
+ * Spans report through NRInstance directly, so they are neither validated nor counted as NRSdk calls.
+ */
+class NRSpans implements Runnable {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRSpans.class.getSimpleName());
+
+    static final String METRIC_CATEGORY = "NRSdk/Spans";
+
+    /* bound on tracked open spans, spans beyond it are not leak checked */
+    static final int MAX_OPEN_SPANS = 1000;
+
+    /* bound on span names with local stats */
+    static final int MAX_SPAN_NAMES = 200;
+
+    private static final long LEAK_CHECK_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final ConcurrentHashMap<NRSpan, Boolean> open = new ConcurrentHashMap<>();
+    private final AtomicInteger openCount = new AtomicInteger();
+
+    private final ConcurrentHashMap<String, StripedStats> durations = new ConcurrentHashMap<>();
+
+    private final AtomicLong leakedCount = new AtomicLong();
+
+    private ScheduledFuture<?> leakCheck;
+
+    NRSpan start(String name) {
+        // local timing works before init(), the interaction only once the agent runs
+        String interactionID = null;
+        NRInstance instance = startedInstance();
+        if (null != instance) {
+            try {
+                interactionID = instance.startInteraction(name);
+            } catch (Exception e) {
+                logger.error("error in start()", e);
+            }
+        }
+        return register(new NRSpan(this, null, name, interactionID));
+    }
+
+    /**
+     * @return the instance once the agent is started, null before
+     */
+    private static NRInstance startedInstance() {
+        NRInstance instance = NRInstance.getInstance();
+        return null != instance && instance.isInitialized() ? instance : null;
+    }
+
+    NRSpan startChild(NRSpan parent, String name) {
+        if (Utils.isEmptyOrNull(name)) {
+            logger.error("error in startChild()", "name is empty OR null");
+            return null;
+        }
+
+        NRSpan child = new NRSpan(this, parent, parent.getName() + "/" + name, null);
+        parent.addChild(child);
+        return register(child);
+    }
+
+    private NRSpan register(NRSpan span) {
+        if (openCount.incrementAndGet() > MAX_OPEN_SPANS) {
+            openCount.decrementAndGet();
+        } else {
+            open.put(span, Boolean.TRUE);
+        }
+
+        startLeakCheck();
+        return span;
+    }
+
+    void onClosed(NRSpan span) {
+        if (null != open.remove(span)) {
+            openCount.decrementAndGet();
+        }
+
+        long nanos = span.getDurationNanos();
+        StripedStats stats = stats(span.getName());
+        if (null != stats) {
+            stats.record(nanos / 1e6);
+        }
+
+        NRInstance instance = NRInstance.getInstance();
+        if (null != instance) {
+            instance.recordSpanLatency(span.getName(), nanos);
+        }
+
+        // closed before init(), only the local stats have it
+        instance = startedInstance();
+        if (null == instance) {
+            return;
+        }
+
+        try {
+            instance.recordMetric(span.getName(), METRIC_CATEGORY, NRMetricUnit.NANOSECONDS.toCanonical(nanos),
+                    MetricUnit.OPERATIONS, NRMetricUnit.NANOSECONDS.getCanonicalUnit());
+            if (null != span.getInteractionID()) {
+                instance.endInteraction(span.getInteractionID());
+            }
+        } catch (Exception e) {
+            logger.error("error in onClosed()", e);
+        }
+    }
+
+    private StripedStats stats(String name) {
+        StripedStats stats = durations.get(name);
+        if (null != stats || durations.size() >= MAX_SPAN_NAMES) {
+            return stats;
+        }
+
+        StripedStats created = new StripedStats();
+        stats = durations.putIfAbsent(name, created);
+        return null == stats ? created : stats;
+    }
+
+    /**
+     * @return durations of closed spans of that name in milliseconds, null if there were none
+     */
+    StripedStats.Snapshot getStats(String name) {
+        StripedStats stats = durations.get(name);
+        return null == stats ? null : stats.snapshotTo(new StripedStats.Snapshot());
+    }
+
+    int getOpenCount() {
+        return openCount.get();
+    }
+
+    long getLeakedCount() {
+        return leakedCount.get();
+    }
+
+    private synchronized void startLeakCheck() {
+        if (null == leakCheck) {
+            leakCheck = NRScheduler.scheduleAtFixedRate("NRSpans.checkLeaks()", this, LEAK_CHECK_INTERVAL_MS);
+        }
+    }
+
+    @Override
+    public void run() {
+        NRInstance instance = NRInstance.getInstance();
+        int thresholdInSec = null == instance ? NRConfig.DEFAULT_SPAN_LEAK_THRESHOLD : instance.getConfig().getSpanLeakThreshold();
+        checkLeaks(System.nanoTime(), TimeUnit.SECONDS.toNanos(thresholdInSec));
+    }
+
+    /**
+     * Reports spans open for longer than the threshold, once, and stops tracking them.
+     */
+    void checkLeaks(long nowNanos, long thresholdNanos) {
+        for (Map.Entry<NRSpan, Boolean> entry : open.entrySet()) {
+            NRSpan span = entry.getKey();
+            long ageNanos = nowNanos - span.getStartNanos();
+            if (ageNanos <= thresholdNanos || null == open.remove(span)) {
+                continue;
+            }
+
+            openCount.decrementAndGet();
+            leakedCount.incrementAndGet();
+            logger.error("span {} is still open after {} s, missing close()?", span.getName(), TimeUnit.NANOSECONDS.toSeconds(ageNanos));
+            NRInstance instance = startedInstance();
+            if (null != instance) {
+                instance.recordMetric("Leaked/" + span.getName(), METRIC_CATEGORY);
+            }
+        }
+    }
+}
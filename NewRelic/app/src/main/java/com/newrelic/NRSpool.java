@@ -0,0 +1,518 @@
+package com.newrelic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only spool of the events handed to the agent, so events still waiting for a harvest
+ * survive a process kill.
+ * <p>
+ * Events are appended to memory-mapped segment files. There is no fsync, the kernel writes the
+ * pages back on its own, which covers a killed or crashed process (not a power loss) without
+ * blocking I/O on the recording thread. A record only counts once its length is written, which
+ * happens after its payload, so a record torn by a kill is ignored on recovery.
+ * The next segment is allocated ahead on NRScheduler and retired segments are deleted there,
+ * so a full segment is swapped for the spare one under the lock, without file I/O.
+ * Events recorded while there is no segment to write to, before open() has allocated the first
+ * one or while the spare is not ready, are kept in memory up to MAX_PENDING records.
+ * <p>
+ * The agent does not report harvests. It harvests when the app goes to the background, so
+ * onBackground() retires everything spooled so far and only events recorded after it are
+ * replayed. While the app stays in the foreground, segments are retired by age: a segment is
+ * deleted once it has been closed for longer than the event buffer time. Recovered events can
+ * still include events harvested in between, they are tagged with RECOVERED_ATTRIBUTE.
+ * Each segment is replayed at most once: it is renamed to REPLAYED_SUFFIX before its records
+ * are sent, and recovered records are sent straight to the backend without being spooled again.
+ */
+class NRSpool implements Runnable {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRSpool.class.getSimpleName());
+
+    static final String DIRECTORY = "nrsdk-spool";
+
+    /* attribute added to events replayed from a previous process */
+    static final String RECOVERED_ATTRIBUTE = "recovered";
+
+    static final int MIN_SEGMENT_SIZE = 16 * 1024;
+
+    static final int SEGMENTS = 4;
+
+    /* bound on records waiting for a segment, further ones are dropped */
+    static final int MAX_PENDING = 256;
+
+    /* how often retired segments are deleted */
+    private static final long CLEANUP_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /* headroom on top of the buffer time before a segment is retired */
+    private static final long RETENTION_MARGIN_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final int MAGIC = 0x4e525350; // "NRSP"
+    private static final int HEADER_SIZE = 4;
+
+    private static final String SUFFIX = ".spool";
+
+    /* marks a segment whose replay has started, it is deleted without being replayed again */
+    private static final String REPLAYED_SUFFIX = ".replayed";
+
+    private static final byte CUSTOM_EVENT = 1;
+    private static final byte BREADCRUMB = 2;
+
+
+    private final File directory;
+    private final int segmentSize;
+
+    /* closed segments, oldest first */
+    private final List<Segment> closed = new ArrayList<>();
+
+    /* segments to delete on the scheduler */
+    private final List<Segment> retired = new ArrayList<>();
+
+    /* encoded records waiting for a segment, oldest first */
+    private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+
+    /* segment being appended to, and the next one, null until allocated by prepare() */
+    private Segment current;
+    private Segment spare;
+    private long nextSequence;
+    private boolean opened;
+    private boolean disabled;
+    private boolean preparing;
+
+    /* serializes prepare(), so segments are allocated in sequence order */
+    private final Object prepareLock = new Object();
+
+    private volatile long retentionMs = TimeUnit.SECONDS.toMillis(600) + RETENTION_MARGIN_MS;
+
+    private final AtomicLong spooledCount = new AtomicLong();
+    private final AtomicLong recoveredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * @param directory where segments are kept
+     * @param maxSize   size cap of all segments together in bytes
+     */
+    NRSpool(File directory, int maxSize) {
+        this.directory = directory;
+        this.segmentSize = Math.max(MIN_SEGMENT_SIZE, maxSize / SEGMENTS);
+    }
+
+    /**
+     * Replays the events spooled by a previous process into the backend, then starts spooling.
+     * Does file I/O, call it off the main thread. Events recorded meanwhile are spooled once
+     * the first segment is allocated.
+     *
+     * @param backend where recovered events go, bypassing the spool
+     * @return number of recovered events
+     */
+    int open(NRBackend backend) {
+        File[] files = directory.listFiles();
+        List<File> previous = new ArrayList<>();
+        if (null != files) {
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.getName().endsWith(SUFFIX)) {
+                    previous.add(file);
+                } else if (file.getName().endsWith(REPLAYED_SUFFIX)) {
+                    // a previous replay was cut short, its events may have been sent already
+                    delete(file);
+                }
+            }
+        } else if (!directory.mkdirs() && !directory.isDirectory()) {
+            logger.error("error in open()", "can not create " + directory);
+            synchronized (this) {
+                disabled = true;
+                pending.clear();
+            }
+            return 0;
+        }
+
+        synchronized (this) {
+            nextSequence = previous.isEmpty() ? 0 : sequenceOf(previous.get(previous.size() - 1)) + 1;
+            opened = true;
+        }
+        prepare();
+
+        int recovered = 0;
+        for (File file : previous) {
+            // marked first, so a kill during the replay does not replay the segment twice
+            File replayed = new File(directory, file.getName() + REPLAYED_SUFFIX);
+            if (!file.renameTo(replayed)) {
+                logger.error("error in open()", "can not mark " + file);
+                delete(file);
+                continue;
+            }
+
+            recovered += recover(replayed, backend);
+            delete(replayed);
+        }
+
+        recoveredCount.addAndGet(recovered);
+        if (recovered > 0) {
+            logger.info("NRSpool recovered {} events", recovered);
+        }
+        return recovered;
+    }
+
+    void start() {
+        NRScheduler.scheduleAtFixedRate("NRSpool.cleanup()", this, CLEANUP_INTERVAL_MS);
+    }
+
+    /**
+     * @param bufferTimeInSec event buffer time of the agent, events older than that are assumed harvested
+     */
+    void setBufferTime(int bufferTimeInSec) {
+        retentionMs = TimeUnit.SECONDS.toMillis(bufferTimeInSec) + RETENTION_MARGIN_MS;
+    }
+
+    void appendCustomEvent(String eventType, String eventName, Map<String, Object> eventAttributes) {
+        append(CUSTOM_EVENT, eventType, eventName, eventAttributes);
+    }
+
+    void appendBreadcrumb(String eventName, Map<String, Object> eventAttributes) {
+        append(BREADCRUMB, null, eventName, eventAttributes);
+    }
+
+    private void append(byte kind, String eventType, String eventName, Map<String, Object> eventAttributes) {
+        byte[] record;
+        try {
+            record = encode(kind, eventType, eventName, eventAttributes);
+        } catch (IOException e) {
+            logger.error("error in append()", e);
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        // length, payload and the next record's zero length must fit
+        if (record.length + 8 > segmentSize - HEADER_SIZE) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        synchronized (this) {
+            if (disabled) {
+                return;
+            }
+
+            // pending records go first, to keep the order
+            if (pending.isEmpty() && write(record)) {
+                return;
+            }
+
+            if (pending.size() >= MAX_PENDING) {
+                droppedCount.incrementAndGet();
+            } else {
+                pending.add(record);
+            }
+        }
+    }
+
+    /**
+     * Appends a record to the current segment, rotating to the spare one when it is full.
+     * Must hold the lock.
+     *
+     * @return false if there is no segment to write to
+     */
+    private boolean write(byte[] record) {
+        if (null != current && current.buffer.remaining() < record.length + 8) {
+            rotate();
+        }
+        if (null == current) {
+            return false;
+        }
+
+        MappedByteBuffer buffer = current.buffer;
+        int position = buffer.position();
+        buffer.position(position + 4);
+        buffer.put(record);
+        buffer.putInt(0);
+        // commit, a record without its length is never read back
+        buffer.putInt(position, record.length);
+        buffer.position(position + 4 + record.length);
+        current.lastWriteMs = System.currentTimeMillis();
+        current.records++;
+        spooledCount.incrementAndGet();
+        return true;
+    }
+
+    /* must hold the lock */
+    private void writePending() {
+        while (!pending.isEmpty() && write(pending.peek())) {
+            pending.poll();
+        }
+    }
+
+    /**
+     * Retires everything spooled so far, the agent harvests when the app goes to the background.
+     * Cheap enough for the main thread, the segments are deleted on the scheduler.
+     */
+    void onBackground() {
+        synchronized (this) {
+            pending.clear();
+            retired.addAll(closed);
+            closed.clear();
+            if (null != current && current.records > 0) {
+                retired.add(current);
+                current = spare;
+                spare = null;
+            }
+
+            if (!retired.isEmpty()) {
+                schedulePrepare();
+            }
+        }
+    }
+
+    /**
+     * Deletes segments whose events the agent has harvested by now.
+     */
+    @Override
+    public void run() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (null != current && current.lastWriteMs > 0 && now - current.lastWriteMs > retentionMs) {
+                // nothing written for a whole harvest cycle, start over
+                rotate();
+            }
+
+            while (!closed.isEmpty() && now - closed.get(0).lastWriteMs > retentionMs) {
+                retired.add(closed.remove(0));
+            }
+        }
+        prepare();
+    }
+
+    /**
+     * Deletes retired segments and allocates the current and spare segments. Does file I/O,
+     * runs on the scheduler, or in open().
+     */
+    void prepare() {
+        synchronized (prepareLock) {
+            List<Segment> deleting;
+            synchronized (this) {
+                preparing = false;
+                deleting = new ArrayList<>(retired);
+                retired.clear();
+            }
+            for (Segment segment : deleting) {
+                delete(segment);
+            }
+
+            while (true) {
+                long sequence;
+                synchronized (this) {
+                    if (!opened || disabled || (null != current && null != spare)) {
+                        return;
+                    }
+                    sequence = nextSequence++;
+                }
+
+                Segment segment = newSegment(sequence);
+                if (null == segment) {
+                    return;
+                }
+
+                synchronized (this) {
+                    if (null == current) {
+                        current = segment;
+                    } else {
+                        spare = segment;
+                    }
+                    writePending();
+                }
+            }
+        }
+    }
+
+    /* must hold the lock */
+    private void rotate() {
+        if (null != current) {
+            closed.add(current);
+        }
+
+        // size cap, the oldest segment goes
+        while (closed.size() >= SEGMENTS) {
+            Segment oldest = closed.remove(0);
+            droppedCount.addAndGet(oldest.records);
+            retired.add(oldest);
+        }
+
+        current = spare;
+        spare = null;
+        schedulePrepare();
+    }
+
+    /* must hold the lock */
+    private void schedulePrepare() {
+        if (preparing) {
+            return;
+        }
+
+        preparing = true;
+        NRScheduler.execute("NRSpool.prepare()", new Runnable() {
+            @Override
+            public void run() {
+                prepare();
+            }
+        });
+    }
+
+    private Segment newSegment(long sequence) {
+        File file = new File(directory, String.format("%019d%s", sequence, SUFFIX));
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(HEADER_SIZE, 0);
+                buffer.position(HEADER_SIZE);
+                return new Segment(file, buffer);
+            } finally {
+                // the mapping stays valid after the channel is closed
+                raf.close();
+            }
+        } catch (IOException e) {
+            logger.error("error in newSegment()", e);
+            return null;
+        }
+    }
+
+    private void delete(Segment segment) {
+        delete(segment.file);
+    }
+
+    private static void delete(File file) {
+        if (!file.delete()) {
+            logger.error("error in delete()", "can not delete " + file);
+        }
+    }
+
+    private int recover(File file, NRBackend backend) {
+        int count = 0;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                long length = raf.length();
+                if (length < HEADER_SIZE) {
+                    return 0;
+                }
+
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+                if (buffer.getInt() != MAGIC) {
+                    logger.error("error in recover()", "not a spool segment " + file);
+                    return 0;
+                }
+
+                while (buffer.remaining() >= 4) {
+                    int size = buffer.getInt();
+                    if (size <= 0 || size > buffer.remaining()) {
+                        break;
+                    }
+
+                    byte[] record = new byte[size];
+                    buffer.get(record);
+                    if (replay(record, backend)) {
+                        count++;
+                    }
+                }
+            } finally {
+                raf.close();
+            }
+        } catch (IOException | BufferUnderflowException e) {
+            logger.error("error in recover()", e);
+        }
+        return count;
+    }
+
+    private boolean replay(byte[] record, NRBackend backend) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            byte kind = in.readByte();
+            String eventType = kind == CUSTOM_EVENT ? in.readUTF() : null;
+            String eventName = in.readBoolean() ? in.readUTF() : null;
+
+            int size = in.readInt();
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+            Map<String, Object> attributes = NRAttributes.fromByteArray(encoded, size).toMap();
+            attributes.put(RECOVERED_ATTRIBUTE, true);
+
+            return kind == CUSTOM_EVENT
+                    ? backend.recordCustomEvent(eventType, eventName, attributes)
+                    : backend.recordBreadcrumb(eventName, attributes);
+        } catch (Exception e) {
+            logger.error("error in replay()", e);
+            return false;
+        }
+    }
+
+    private static byte[] encode(byte kind, String eventType, String eventName, Map<String, Object> eventAttributes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(kind);
+        if (kind == CUSTOM_EVENT) {
+            out.writeUTF(eventType);
+        }
+        out.writeBoolean(null != eventName);
+        if (null != eventName) {
+            out.writeUTF(eventName);
+        }
+
+        NRAttributes attributes = NRAttributes.encodePortable(eventAttributes);
+        if (null == attributes) {
+            attributes = NRAttributes.EMPTY;
+        }
+        out.writeInt(attributes.size());
+        out.writeInt(attributes.toByteArray().length);
+        out.write(attributes.toByteArray());
+        return bytes.toByteArray();
+    }
+
+    private static long sequenceOf(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    long getSpooledCount() {
+        return spooledCount.get();
+    }
+
+    long getRecoveredCount() {
+        return recoveredCount.get();
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private static final class Segment {
+        final File file;
+        final MappedByteBuffer buffer;
+        long lastWriteMs;
+        int records;
+
+        Segment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+}
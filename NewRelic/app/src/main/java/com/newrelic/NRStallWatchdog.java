@@ -0,0 +1,266 @@
+package com.newrelic;
+
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ANR-style watchdog. A background thread posts a heartbeat to the main looper every threshold,
+ * a heartbeat which does not run within the threshold is a stall. While the stall lasts the main
+ * thread's stack is sampled, and the stall is counted against the stack sampled most often.
+ * <p>
+ * Stalls are aggregated by stack fingerprint and flushed periodically as one NRMainThreadStall
+ * handled exception per stack, with "stallCount", "stallDurationMs" and "maxStallDurationMs" attributes.
+ * While the main thread is healthy the watchdog only posts its heartbeat and sleeps, nothing is allocated.
+ * Stalls are not reported while a debugger is connected, the app is then likely paused at a breakpoint.
+ */
+class NRStallWatchdog implements Runnable {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRStallWatchdog.class.getSimpleName());
+
+    static final String STALL_COUNT = "stallCount";
+    static final String STALL_DURATION = "stallDurationMs";
+    static final String MAX_STALL_DURATION = "maxStallDurationMs";
+
+    /* bound on stack samples taken during one stall */
+    static final int MAX_SAMPLES = 32;
+
+    /* bound on stall sites between flushes, stalls at further sites are dropped */
+    static final int MAX_SITES = 50;
+
+    /* samples taken per threshold while stalled */
+    private static final int SAMPLES_PER_THRESHOLD = 4;
+
+    private final NRInstance instance;
+    private final long thresholdMs;
+    private final long sampleIntervalMs;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Thread mainThread = Looper.getMainLooper().getThread();
+    private final Thread worker;
+
+    /* heartbeats posted and answered, the main thread copies posted into answered */
+    private volatile long posted;
+    private volatile long answered;
+
+    private final Runnable heartbeat = new Runnable() {
+        @Override
+        public void run() {
+            answered = posted;
+        }
+    };
+
+    // samples of the current stall, only touched on the watchdog thread
+    private final long[] sampleFingerprints = new long[MAX_SAMPLES];
+    private final int[] sampleCounts = new int[MAX_SAMPLES];
+    private final StackTraceElement[][] sampleStacks = new StackTraceElement[MAX_SAMPLES][];
+    private int samples;
+
+    // fingerprint -> stalls at that site since the last flush, guarded by this
+    private final HashMap<Long, Site> sites = new HashMap<>();
+
+    private final AtomicLong stalls = new AtomicLong();
+
+    private volatile boolean running;
+
+    private ScheduledFuture<?> flushTask;
+
+    NRStallWatchdog(NRInstance instance, long thresholdMs) {
+        this.instance = instance;
+        this.thresholdMs = thresholdMs;
+        this.sampleIntervalMs = Math.max(1, thresholdMs / SAMPLES_PER_THRESHOLD);
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "NRSdk-watchdog");
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * Starts watching and flushing periodically.
+     *
+     * @param flushIntervalMs flush interval in milliseconds
+     */
+    synchronized void start(long flushIntervalMs) {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        worker.start();
+        flushTask = NRScheduler.scheduleAtFixedRate("NRStallWatchdog.flush()", this, flushIntervalMs);
+    }
+
+    /**
+     * @return number of stalls detected since start
+     */
+    long getStallCount() {
+        return stalls.get();
+    }
+
+    @Override
+    public void run() {
+        flush();
+    }
+
+    /**
+     * Watchdog thread loop, posts a heartbeat and checks it ran one threshold later.
+     */
+    private void watch() {
+        try {
+            while (running) {
+                long beat = posted + 1;
+                posted = beat;
+                mainHandler.post(heartbeat);
+                Thread.sleep(thresholdMs);
+
+                if (answered < beat && !Debug.isDebuggerConnected()) {
+                    watchStall(beat);
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.info("NRStallWatchdog interrupted");
+        } catch (Exception e) {
+            logger.error("error in watch()", e);
+        }
+    }
+
+    /**
+     * Samples the main thread until the heartbeat runs, then records the stall.
+     */
+    private void watchStall(long beat) throws InterruptedException {
+        long stallNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+        long startNanos = System.nanoTime();
+        samples = 0;
+        while (running && answered < beat) {
+            sample();
+            Thread.sleep(sampleIntervalMs);
+        }
+
+        stallNanos += System.nanoTime() - startNanos;
+        if (Debug.isDebuggerConnected()) {
+            clearSamples();
+            return;
+        }
+
+        stalls.incrementAndGet();
+        onStall(TimeUnit.NANOSECONDS.toMillis(stallNanos));
+    }
+
+    private void sample() {
+        if (samples == MAX_SAMPLES) {
+            return;
+        }
+
+        StackTraceElement[] stack = mainThread.getStackTrace();
+        long fingerprint = NRExceptionDedup.fingerprint(NRMainThreadStall.class.getName(), stack);
+        for (int i = 0; i < samples; i++) {
+            if (sampleFingerprints[i] == fingerprint) {
+                sampleCounts[i]++;
+                return;
+            }
+        }
+
+        sampleFingerprints[samples] = fingerprint;
+        sampleCounts[samples] = 1;
+        sampleStacks[samples] = stack;
+        samples++;
+    }
+
+    /**
+     * Counts a stall against the stack sampled most often.
+     */
+    void onStall(long durationMs) {
+        int top = -1;
+        for (int i = 0; i < samples; i++) {
+            if (top < 0 || sampleCounts[i] > sampleCounts[top]) {
+                top = i;
+            }
+        }
+        if (top < 0) {
+            // ended before the first sample
+            return;
+        }
+
+        Long fingerprint = sampleFingerprints[top];
+        StackTraceElement[] stack = sampleStacks[top];
+        clearSamples();
+
+        // under the flush lock, so a stall is not recorded into a site the flush has taken
+        synchronized (this) {
+            Site site = sites.get(fingerprint);
+            if (null == site) {
+                if (sites.size() >= MAX_SITES) {
+                    return;
+                }
+                site = new Site(stack);
+                sites.put(fingerprint, site);
+            }
+            site.record(durationMs);
+        }
+    }
+
+    private void clearSamples() {
+        for (int i = 0; i < samples; i++) {
+            sampleStacks[i] = null;
+        }
+        samples = 0;
+    }
+
+    /**
+     * Reports the stalls recorded since the last flush, one handled exception per stack.
+     */
+    void flush() {
+        List<Site> flushed;
+        synchronized (this) {
+            if (sites.isEmpty()) {
+                return;
+            }
+            flushed = new ArrayList<>(sites.values());
+            sites.clear();
+        }
+
+        for (Site site : flushed) {
+            try {
+                Map<String, Object> attributes = new HashMap<>();
+                attributes.put(STALL_COUNT, site.count);
+                attributes.put(STALL_DURATION, site.durationMs);
+                attributes.put(MAX_STALL_DURATION, site.maxDurationMs);
+                instance.forwardHandledException(new NRMainThreadStall(thresholdMs, site.stack), attributes);
+            } catch (Exception e) {
+                logger.error("error in flush()", e);
+            }
+        }
+    }
+
+    /**
+     * Stalls at one stack, guarded by the watchdog.
+     */
+    private static final class Site {
+        final StackTraceElement[] stack;
+        long count;
+        long durationMs;
+        long maxDurationMs;
+
+        Site(StackTraceElement[] stack) {
+            this.stack = stack;
+        }
+
+        void record(long stallMs) {
+            count++;
+            durationMs += stallMs;
+            maxDurationMs = Math.max(maxDurationMs, stallMs);
+        }
+    }
+}
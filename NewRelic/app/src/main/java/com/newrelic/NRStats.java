@@ -0,0 +1,196 @@
+package com.newrelic;
+
+import com.newrelic.utils.Utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts what NRSdk itself costs: calls per API method, calls rejected by validation or before init(),
+ * calls which threw, and time spent in the underlying agent calls.
+ * <p>
+ * Counters are striped by thread id like StripedStats, recording never locks nor allocates.
+ * See {@link NRSdk#getStats()} for a snapshot.
+ */
+public final class NRStats {
+
+    /**
+     * NRSdk API methods, overloads share one entry.
+     */
+    public enum Api {
+        INIT("init"),
+        UPDATE_CONFIG("updateConfig"),
+        START_INTERACTION("startInteraction"),
+        END_INTERACTION("endInteraction"),
+        SET_INTERACTION_NAME("setInteractionName"),
+        RECORD_CUSTOM_EVENT("recordCustomEvent"),
+        RECORD_BREADCRUMB("recordBreadcrumb"),
+        CRASH_NOW("crashNow"),
+        CURRENT_SESSION_ID("currentSessionId"),
+        NOTICE_HTTP_TRANSACTION("noticeHttpTransaction"),
+        NOTICE_NETWORK_FAILURE("noticeNetworkFailure"),
+        RECORD_HANDLED_EXCEPTION("recordHandledException"),
+        SET_MAX_EVENT_BUFFER_TIME("setMaxEventBufferTime"),
+        SET_MAX_EVENT_POOL_SIZE("setMaxEventPoolSize"),
+        SET_USER_ID("setUserId"),
+        RECORD_METRIC("recordMetric");
+
+        private final String methodName;
+
+        Api(String methodName) {
+            this.methodName = methodName;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+    }
+
+    private static final Api[] APIS = Api.values();
+
+    private static final int CALLS = 0;
+    private static final int REJECTED = 1;
+    private static final int FAILED = 2;
+    private static final int AGENT_CALLS = 3;
+    private static final int AGENT_NANOS = 4;
+    private static final int AGENT_MAX_NANOS = 5;
+
+    private static final int FIELDS = 6;
+
+    private static final int MAX_STRIPES = 8;
+
+    private static final int STRIPES = Math.min(MAX_STRIPES, Utils.nextPowerOfTwo(Runtime.getRuntime().availableProcessors()));
+
+    /* shared by NRSdk and NRInstance, the SDK is a singleton */
+    static final NRStats INSTANCE = new NRStats();
+
+    // stripe -> api -> field, a stripe spans several cache lines so stripes never share one
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * APIS.length * FIELDS);
+
+    NRStats() {
+    }
+
+    private static int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & (STRIPES - 1);
+    }
+
+    private static int index(int stripe, Api api, int field) {
+        return (stripe * APIS.length + api.ordinal()) * FIELDS + field;
+    }
+
+    void call(Api api) {
+        cells.incrementAndGet(index(stripe(), api, CALLS));
+    }
+
+    void rejected(Api api) {
+        cells.incrementAndGet(index(stripe(), api, REJECTED));
+    }
+
+    void failed(Api api) {
+        cells.incrementAndGet(index(stripe(), api, FAILED));
+    }
+
+    /**
+     * @param nanos time spent in the agent call
+     */
+    void agentCall(Api api, long nanos) {
+        int stripe = stripe();
+        cells.incrementAndGet(index(stripe, api, AGENT_CALLS));
+        cells.addAndGet(index(stripe, api, AGENT_NANOS), nanos);
+
+        int max = index(stripe, api, AGENT_MAX_NANOS);
+        for (long current = cells.get(max); nanos > current; current = cells.get(max)) {
+            if (cells.compareAndSet(max, current, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return totals since the process started
+     */
+    Snapshot snapshot() {
+        long[] totals = new long[APIS.length * FIELDS];
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (Api api : APIS) {
+                int base = api.ordinal() * FIELDS;
+                for (int field = 0; field < FIELDS; field++) {
+                    long value = cells.get(index(stripe, api, field));
+                    totals[base + field] = field == AGENT_MAX_NANOS
+                            ? Math.max(totals[base + field], value) : totals[base + field] + value;
+                }
+            }
+        }
+        return new Snapshot(totals);
+    }
+
+    /**
+     * Totals per API method at the time of the snapshot.
+     */
+    public static final class Snapshot {
+        private final long[] totals;
+
+        Snapshot(long[] totals) {
+            this.totals = totals;
+        }
+
+        private long get(Api api, int field) {
+            return totals[api.ordinal() * FIELDS + field];
+        }
+
+        /**
+         * @return calls of the API method, including rejected and failed ones
+         */
+        public long getCalls(Api api) {
+            return get(api, CALLS);
+        }
+
+        /**
+         * @return calls rejected by validation, or made before init()
+         */
+        public long getRejected(Api api) {
+            return get(api, REJECTED);
+        }
+
+        /**
+         * @return calls which threw an exception, including calls executed later by async dispatch or pre-init replay
+         */
+        public long getFailed(Api api) {
+            return get(api, FAILED);
+        }
+
+        /**
+         * @return calls made to the agent, these include calls made by the SDK itself, e.g. flushed metrics
+         */
+        public long getAgentCalls(Api api) {
+            return get(api, AGENT_CALLS);
+        }
+
+        public long getAgentTimeNanos(Api api) {
+            return get(api, AGENT_NANOS);
+        }
+
+        public long getMaxAgentTimeNanos(Api api) {
+            return get(api, AGENT_MAX_NANOS);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(64 * APIS.length);
+            for (Api api : APIS) {
+                if (getCalls(api) == 0 && getAgentCalls(api) == 0) {
+                    continue;
+                }
+                sb.append(api.getMethodName())
+                        .append(": calls=").append(getCalls(api))
+                        .append(" rejected=").append(getRejected(api))
+                        .append(" failed=").append(getFailed(api))
+                        .append(" agentCalls=").append(getAgentCalls(api))
+                        .append(" agentTimeNanos=").append(getAgentTimeNanos(api))
+                        .append(" maxAgentTimeNanos=").append(getMaxAgentTimeNanos(api))
+                        .append('\n');
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.newrelic;
+
+import android.content.Context;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+
+import java.util.Map;
+
+/**
+ * NRBackend that times every call to the backend it wraps, see NRStats.
+ */
+final class NRStatsBackend implements NRBackend {
+
+    private final NRBackend delegate;
+    private final NRStats stats;
+
+    NRStatsBackend(NRBackend delegate, NRStats stats) {
+        this.delegate = delegate;
+        this.stats = stats;
+    }
+
+    @Override
+    public void start(Context context, NRConfig config) {
+        long start = System.nanoTime();
+        try {
+            delegate.start(context, config);
+        } finally {
+            stats.agentCall(NRStats.Api.INIT, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public String startInteraction(String actionName) {
+        long start = System.nanoTime();
+        try {
+            return delegate.startInteraction(actionName);
+        } finally {
+            stats.agentCall(NRStats.Api.START_INTERACTION, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void endInteraction(String interactionID) {
+        long start = System.nanoTime();
+        try {
+            delegate.endInteraction(interactionID);
+        } finally {
+            stats.agentCall(NRStats.Api.END_INTERACTION, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void setInteractionName(String interactionName) {
+        long start = System.nanoTime();
+        try {
+            delegate.setInteractionName(interactionName);
+        } finally {
+            stats.agentCall(NRStats.Api.SET_INTERACTION_NAME, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean recordBreadcrumb(String eventName, Map<String, Object> eventAttributes) {
+        long start = System.nanoTime();
+        try {
+            return delegate.recordBreadcrumb(eventName, eventAttributes);
+        } finally {
+            stats.agentCall(NRStats.Api.RECORD_BREADCRUMB, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean recordCustomEvent(String eventType, String eventName, Map<String, Object> eventAttributes) {
+        long start = System.nanoTime();
+        try {
+            return delegate.recordCustomEvent(eventType, eventName, eventAttributes);
+        } finally {
+            stats.agentCall(NRStats.Api.RECORD_CUSTOM_EVENT, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void crashNow(String message) {
+        long start = System.nanoTime();
+        try {
+            delegate.crashNow(message);
+        } finally {
+            stats.agentCall(NRStats.Api.CRASH_NOW, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public String currentSessionId() {
+        long start = System.nanoTime();
+        try {
+            return delegate.currentSessionId();
+        } finally {
+            stats.agentCall(NRStats.Api.CURRENT_SESSION_ID, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void noticeHttpTransaction(String url, String httpMethod, int statusCode, long startTime, long endTime, long bytesSent, long bytesReceived, String responseBody) {
+        long start = System.nanoTime();
+        try {
+            delegate.noticeHttpTransaction(url, httpMethod, statusCode, startTime, endTime, bytesSent, bytesReceived, responseBody);
+        } finally {
+            stats.agentCall(NRStats.Api.NOTICE_HTTP_TRANSACTION, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void noticeNetworkFailure(String url, String httpMethod, long startTime, long endTime, Exception exception) {
+        long start = System.nanoTime();
+        try {
+            delegate.noticeNetworkFailure(url, httpMethod, startTime, endTime, exception);
+        } finally {
+            stats.agentCall(NRStats.Api.NOTICE_NETWORK_FAILURE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean recordHandledException(Exception exception, Map<String, Object> exceptionAttributes) {
+        long start = System.nanoTime();
+        try {
+            return delegate.recordHandledException(exception, exceptionAttributes);
+        } finally {
+            stats.agentCall(NRStats.Api.RECORD_HANDLED_EXCEPTION, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void setMaxEventBufferTime(int maxBufferTimeInSec) {
+        long start = System.nanoTime();
+        try {
+            delegate.setMaxEventBufferTime(maxBufferTimeInSec);
+        } finally {
+            stats.agentCall(NRStats.Api.SET_MAX_EVENT_BUFFER_TIME, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void setMaxEventPoolSize(int maxSize) {
+        long start = System.nanoTime();
+        try {
+            delegate.setMaxEventPoolSize(maxSize);
+        } finally {
+            stats.agentCall(NRStats.Api.SET_MAX_EVENT_POOL_SIZE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean setUserId(String userId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.setUserId(userId);
+        } finally {
+            stats.agentCall(NRStats.Api.SET_USER_ID, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void recordMetric(String name, String category, double value) {
+        long start = System.nanoTime();
+        try {
+            delegate.recordMetric(name, category, value);
+        } finally {
+            stats.agentCall(NRStats.Api.RECORD_METRIC, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void recordMetric(String name, String category, int count, double totalValue, double exclusiveValue, MetricUnit countUnit, MetricUnit valueUnit) {
+        long start = System.nanoTime();
+        try {
+            delegate.recordMetric(name, category, count, totalValue, exclusiveValue, countUnit, valueUnit);
+        } finally {
+            stats.agentCall(NRStats.Api.RECORD_METRIC, System.nanoTime() - start);
+        }
+    }
+}
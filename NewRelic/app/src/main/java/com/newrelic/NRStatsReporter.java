@@ -0,0 +1,76 @@
+package com.newrelic;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports NRStats periodically as metrics in the "NRSdk/Stats" category, named "method/Calls",
+ * ".../Rejected", ".../Failed" and ".../AgentTime". Each report covers the calls since the previous one.
+ */
+class NRStatsReporter implements Runnable {
+
+    // logger
+    private static final NRLog logger = NRLog.getLogger(NRStatsReporter.class.getSimpleName());
+
+    static final String METRIC_CATEGORY = "NRSdk/Stats";
+
+    private final NRInstance instance;
+    private final NRStats stats;
+
+    /* totals at the previous report, only touched on the scheduler thread */
+    private NRStats.Snapshot previous;
+
+    private ScheduledFuture<?> reportTask;
+
+    NRStatsReporter(NRInstance instance, NRStats stats) {
+        this.instance = instance;
+        this.stats = stats;
+        this.previous = stats.snapshot();
+    }
+
+    synchronized void start(long reportIntervalMs) {
+        if (null == reportTask) {
+            reportTask = NRScheduler.scheduleAtFixedRate("NRStatsReporter.report()", this, reportIntervalMs);
+        }
+    }
+
+    @Override
+    public void run() {
+        report();
+    }
+
+    synchronized void report() {
+        NRStats.Snapshot current = stats.snapshot();
+        for (NRStats.Api api : NRStats.Api.values()) {
+            try {
+                report(api, current, previous);
+            } catch (Exception e) {
+                logger.error("error in report()", e);
+            }
+        }
+        previous = current;
+    }
+
+    private void report(NRStats.Api api, NRStats.Snapshot current, NRStats.Snapshot previous) {
+        String name = api.getMethodName();
+        count(name + "/Calls", current.getCalls(api) - previous.getCalls(api));
+        count(name + "/Rejected", current.getRejected(api) - previous.getRejected(api));
+        count(name + "/Failed", current.getFailed(api) - previous.getFailed(api));
+
+        long agentCalls = current.getAgentCalls(api) - previous.getAgentCalls(api);
+        if (agentCalls > 0) {
+            double seconds = (current.getAgentTimeNanos(api) - previous.getAgentTimeNanos(api)) / (double) TimeUnit.SECONDS.toNanos(1);
+            instance.recordMetric(name + "/AgentTime", METRIC_CATEGORY, (int) Math.min(Integer.MAX_VALUE, agentCalls),
+                    seconds, seconds, MetricUnit.OPERATIONS, MetricUnit.SECONDS);
+        }
+    }
+
+    private void count(String name, long count) {
+        if (count > 0) {
+            instance.recordMetric(name, METRIC_CATEGORY, (int) Math.min(Integer.MAX_VALUE, count),
+                    count, count, MetricUnit.OPERATIONS, MetricUnit.OPERATIONS);
+        }
+    }
+}
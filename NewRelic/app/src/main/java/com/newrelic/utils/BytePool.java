@@ -0,0 +1,60 @@
+package com.newrelic.utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Small lock-free pool of equally sized byte arrays.
+ * <p>
+ * Arrays are created on demand. At most {@code slots} idle arrays are kept, arrays released
+ * to a full pool are left to the garbage collector.
+ */
+public final class BytePool {
+
+    private final int arraySize;
+    private final AtomicReferenceArray<byte[]> idle;
+
+    /**
+     * @param arraySize size of the pooled arrays
+     * @param slots     number of idle arrays kept
+     */
+    public BytePool(int arraySize, int slots) {
+        if (arraySize <= 0 || slots <= 0) {
+            throw new IllegalArgumentException("arraySize and slots must be greater than 0");
+        }
+
+        this.arraySize = arraySize;
+        this.idle = new AtomicReferenceArray<>(slots);
+    }
+
+    /**
+     * @return an idle array, or a new one if none is idle. Its content is undefined.
+     */
+    public byte[] acquire() {
+        for (int i = 0; i < idle.length(); i++) {
+            byte[] array = idle.getAndSet(i, null);
+            if (null != array) {
+                return array;
+            }
+        }
+        return new byte[arraySize];
+    }
+
+    /**
+     * @param array array from {@link #acquire()}, must not be used afterwards
+     */
+    public void release(byte[] array) {
+        if (null == array || array.length != arraySize) {
+            return;
+        }
+
+        for (int i = 0; i < idle.length(); i++) {
+            if (idle.compareAndSet(i, null, array)) {
+                return;
+            }
+        }
+    }
+
+    public int getArraySize() {
+        return arraySize;
+    }
+}
@@ -0,0 +1,183 @@
+package com.newrelic.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory histogram of non-negative long values with log-spaced buckets, in the style of HdrHistogram.
+ * <p>
+ * Values below 32 get a bucket each, larger values share 32 buckets per power of two, so any
+ * recorded value is off by at most 1/32 (about 3%) when read back. Values above the configured
+ * maximum are counted as the maximum. Recording is lock-free and never allocates, histograms of
+ * the same maximum can be merged.
+ */
+public final class LogHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long maxValue;
+    private final AtomicLongArray counts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param maxValue largest value told apart, e.g. 1 hour in the unit recorded
+     */
+    public LogHistogram(long maxValue) {
+        if (maxValue < 1) {
+            throw new IllegalArgumentException("maxValue must be greater than 0");
+        }
+
+        this.maxValue = maxValue;
+        this.counts = new AtomicLongArray(index(maxValue) + 1);
+    }
+
+    /**
+     * Records one value, negative values are counted as 0.
+     *
+     * @param value value
+     */
+    public void record(long value) {
+        long clamped = Math.max(0, Math.min(value, maxValue));
+        counts.incrementAndGet(index(clamped));
+        count.incrementAndGet();
+
+        for (; ; ) {
+            long current = max.get();
+            if (current >= clamped || max.compareAndSet(current, clamped)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return largest value recorded, 0 if none
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile percentile, 0 to 100
+     * @return value at that percentile, within the bucket precision, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile >= 100) {
+            return getMax();
+        }
+
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                // a bucket can not hold a value above the largest one recorded
+                return Math.min(valueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Adds the values recorded in another histogram to this one.
+     *
+     * @param other LogHistogram with the same maximum
+     */
+    public void add(LogHistogram other) {
+        checkCompatible(other);
+        for (int i = 0; i < counts.length(); i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+        count.addAndGet(other.count.get());
+        long otherMax = other.max.get();
+        for (; ; ) {
+            long current = max.get();
+            if (current >= otherMax || max.compareAndSet(current, otherMax)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves the values recorded in this histogram into another one, which is reset first.
+     * Buckets are moved one by one, a value recorded concurrently may land in the next drain.
+     *
+     * @param target LogHistogram with the same maximum, reused by the caller
+     * @return target
+     */
+    public LogHistogram drainTo(LogHistogram target) {
+        checkCompatible(target);
+        target.reset();
+
+        long drained = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long c = counts.getAndSet(i, 0);
+            if (c != 0) {
+                target.counts.set(i, c);
+                drained += c;
+            }
+        }
+        count.addAndGet(-drained);
+        target.count.set(drained);
+        target.max.set(drained == 0 ? 0 : max.getAndSet(0));
+        return target;
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        max.set(0);
+    }
+
+    private void checkCompatible(LogHistogram other) {
+        if (other.maxValue != maxValue) {
+            throw new IllegalArgumentException("histograms must have the same maxValue");
+        }
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return middle of the bucket's value range
+     */
+    static long valueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lowest + ((1L << shift) >> 1);
+    }
+}
@@ -0,0 +1,120 @@
+package com.newrelic.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free array queue for many producers and one draining consumer.
+ * <p>
+ * Each slot carries a sequence number (Vyukov's bounded queue), so producers only contend on a
+ * single CAS of the tail and never block each other. {@link #poll()} is CAS based as well, which
+ * lets a producer evict the head when it has to make room (drop-oldest overflow).
+ *
+ * @param <E> element type
+ */
+public final class MpscBoundedQueue<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequence;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity requested capacity, rounded up to the next power of two
+     */
+    public MpscBoundedQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+
+        int size = Utils.nextPowerOfTwo(capacity);
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequence.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element at the tail.
+     *
+     * @param e element, must not be null
+     * @return false if the queue is full
+     */
+    public boolean offer(E e) {
+        if (null == e) {
+            throw new NullPointerException("element is null");
+        }
+
+        long pos = tail.get();
+        int index;
+        for (; ; ) {
+            index = (int) (pos & mask);
+            long diff = sequence.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false; // full
+            } else {
+                pos = tail.get();
+            }
+        }
+
+        buffer.lazySet(index, e);
+        // volatile store, so the consumer's wake-up check can not miss this element
+        sequence.set(index, pos + 1);
+        return true;
+    }
+
+    /**
+     * Removes the element at the head.
+     *
+     * @return the head element or null if the queue is empty
+     */
+    public E poll() {
+        long pos = head.get();
+        int index;
+        for (; ; ) {
+            index = (int) (pos & mask);
+            long diff = sequence.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return null; // empty
+            } else {
+                pos = head.get();
+            }
+        }
+
+        E e = buffer.get(index);
+        buffer.lazySet(index, null);
+        sequence.lazySet(index, pos + mask + 1);
+        return e;
+    }
+
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    /**
+     * @return approximate number of queued elements
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
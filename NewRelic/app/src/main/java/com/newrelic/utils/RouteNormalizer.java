@@ -0,0 +1,155 @@
+package com.newrelic.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Turns URLs into route templates, so URLs of the same endpoint group together:
+ * <pre>
+ * https://api.example.com/users/123/orders/9f2c0d4e-...-1a2b?page=2  ->  https://api.example.com/users/{id}/orders/{uuid}
+ * </pre>
+ * Numeric path segments become {id}, UUIDs {uuid} and hex strings of 8 or more digits {hex}.
+ * Query strings and fragments are dropped. Results are kept in a bounded LRU cache,
+ * as apps tend to call the same URLs over and over.
+ */
+public final class RouteNormalizer {
+
+    public static final String ID = "{id}";
+    public static final String UUID = "{uuid}";
+    public static final String HEX = "{hex}";
+
+    private static final int MIN_HEX_LENGTH = 8;
+
+    private final Map<String, String> cache;
+
+    /**
+     * @param cacheSize number of URLs whose route is cached
+     */
+    public RouteNormalizer(final int cacheSize) {
+        this.cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @param url URL
+     * @return route template of the URL
+     */
+    public String normalize(String url) {
+        synchronized (cache) {
+            String route = cache.get(url);
+            if (null != route) {
+                return route;
+            }
+        }
+
+        String route = template(url);
+        synchronized (cache) {
+            cache.put(url, route);
+        }
+        return route;
+    }
+
+    /**
+     * Computes the route template of a URL, without caching.
+     */
+    public static String template(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+
+        // path starts after "scheme://host"
+        int scheme = url.indexOf("://");
+        int path = url.indexOf('/', scheme >= 0 ? scheme + 3 : 0);
+        if (path < 0 || path >= end) {
+            return url.substring(0, end);
+        }
+
+        StringBuilder sb = new StringBuilder(end);
+        sb.append(url, 0, path);
+        int from = path;
+        while (from < end) {
+            // from points at a '/'
+            int next = url.indexOf('/', from + 1);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            sb.append('/');
+            appendSegment(sb, url, from + 1, next);
+            from = next;
+        }
+        return sb.toString();
+    }
+
+    private static void appendSegment(StringBuilder sb, String url, int start, int end) {
+        if (isNumeric(url, start, end)) {
+            sb.append(ID);
+        } else if (isUuid(url, start, end)) {
+            sb.append(UUID);
+        } else if (isHex(url, start, end)) {
+            sb.append(HEX);
+        } else {
+            sb.append(url, start, end);
+        }
+    }
+
+    private static boolean isNumeric(String s, int start, int end) {
+        if (start == end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUuid(String s, int start, int end) {
+        // 8-4-4-4-12 hex digits
+        if (end - start != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = s.charAt(start + i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!isHexDigit(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHex(String s, int start, int end) {
+        if (end - start < MIN_HEX_LENGTH) {
+            return false;
+        }
+        // require a digit, so words like "deadbeef" or "facade" stay as they are
+        boolean digit = false;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (!isHexDigit(c)) {
+                return false;
+            }
+            digit |= c <= '9';
+        }
+        return digit;
+    }
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+}
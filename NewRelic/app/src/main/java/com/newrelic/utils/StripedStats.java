@@ -0,0 +1,204 @@
+package com.newrelic.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free accumulator of count, sum, min, max and sum of squares.
+ * <p>
+ * Updates are spread over a small number of stripes picked by thread id, so concurrent
+ * writers rarely touch the same cache line. Each stripe is padded to 64 bytes.
+ * Recording is a handful of CAS operations and never allocates.
+ */
+public final class StripedStats {
+
+    private static final int COUNT = 0;
+    private static final int SUM = 1;
+    private static final int MIN = 2;
+    private static final int MAX = 3;
+    private static final int SUM_OF_SQUARES = 4;
+
+    /* longs per stripe, 8 * 8 bytes = one cache line */
+    private static final int STRIDE = 8;
+
+    private static final int MAX_STRIPES = 8;
+
+    private static final int STRIPES = Math.min(MAX_STRIPES, Utils.nextPowerOfTwo(Runtime.getRuntime().availableProcessors()));
+
+    private static final long EMPTY_MIN = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+    private static final long EMPTY_MAX = Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY);
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIDE);
+
+    public StripedStats() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * STRIDE + MIN, EMPTY_MIN);
+            cells.set(i * STRIDE + MAX, EMPTY_MAX);
+        }
+    }
+
+    /**
+     * Records one value.
+     *
+     * @param value value
+     */
+    public void record(double value) {
+        int base = stripe() * STRIDE;
+        addDouble(base + SUM, value);
+        addDouble(base + SUM_OF_SQUARES, value * value);
+        minDouble(base + MIN, value);
+        maxDouble(base + MAX, value);
+        cells.incrementAndGet(base + COUNT);
+    }
+
+    /**
+     * Records an already aggregated batch of values.
+     *
+     * @param count        number of values
+     * @param sum          sum of the values
+     * @param min          smallest value
+     * @param max          largest value
+     * @param sumOfSquares sum of the squared values
+     */
+    public void record(long count, double sum, double min, double max, double sumOfSquares) {
+        if (count <= 0) {
+            return;
+        }
+
+        int base = stripe() * STRIDE;
+        addDouble(base + SUM, sum);
+        addDouble(base + SUM_OF_SQUARES, sumOfSquares);
+        minDouble(base + MIN, min);
+        maxDouble(base + MAX, max);
+        cells.addAndGet(base + COUNT, count);
+    }
+
+    /**
+     * @return number of values recorded since the last reset
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            count += cells.get(i * STRIDE + COUNT);
+        }
+        return count;
+    }
+
+    /**
+     * Copies the accumulated values into a snapshot, without resetting them.
+     *
+     * @param snapshot Snapshot to fill
+     * @return snapshot
+     */
+    public Snapshot snapshotTo(Snapshot snapshot) {
+        snapshot.clear();
+        for (int i = 0; i < STRIPES; i++) {
+            int base = i * STRIDE;
+            long count = cells.get(base + COUNT);
+            if (count == 0) {
+                continue;
+            }
+
+            snapshot.count += count;
+            snapshot.sum += Double.longBitsToDouble(cells.get(base + SUM));
+            snapshot.sumOfSquares += Double.longBitsToDouble(cells.get(base + SUM_OF_SQUARES));
+            snapshot.min = Math.min(snapshot.min, Double.longBitsToDouble(cells.get(base + MIN)));
+            snapshot.max = Math.max(snapshot.max, Double.longBitsToDouble(cells.get(base + MAX)));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Copies the accumulated values into a snapshot and resets them.
+     * Fields are reset one by one, so a value recorded concurrently may be split across two snapshots.
+     *
+     * @param snapshot Snapshot to fill, reused by the caller
+     * @return snapshot
+     */
+    public Snapshot drainTo(Snapshot snapshot) {
+        snapshot.clear();
+        for (int i = 0; i < STRIPES; i++) {
+            int base = i * STRIDE;
+            long count = cells.getAndSet(base + COUNT, 0);
+            if (count == 0) {
+                continue;
+            }
+
+            snapshot.count += count;
+            snapshot.sum += Double.longBitsToDouble(cells.getAndSet(base + SUM, 0));
+            snapshot.sumOfSquares += Double.longBitsToDouble(cells.getAndSet(base + SUM_OF_SQUARES, 0));
+            snapshot.min = Math.min(snapshot.min, Double.longBitsToDouble(cells.getAndSet(base + MIN, EMPTY_MIN)));
+            snapshot.max = Math.max(snapshot.max, Double.longBitsToDouble(cells.getAndSet(base + MAX, EMPTY_MAX)));
+        }
+        return snapshot;
+    }
+
+    private static int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & (STRIPES - 1);
+    }
+
+    private void addDouble(int index, double delta) {
+        for (; ; ) {
+            long current = cells.get(index);
+            long next = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + delta);
+            if (cells.compareAndSet(index, current, next)) {
+                return;
+            }
+        }
+    }
+
+    private void minDouble(int index, double value) {
+        for (; ; ) {
+            long current = cells.get(index);
+            if (Double.longBitsToDouble(current) <= value
+                    || cells.compareAndSet(index, current, Double.doubleToRawLongBits(value))) {
+                return;
+            }
+        }
+    }
+
+    private void maxDouble(int index, double value) {
+        for (; ; ) {
+            long current = cells.get(index);
+            if (Double.longBitsToDouble(current) >= value
+                    || cells.compareAndSet(index, current, Double.doubleToRawLongBits(value))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Point in time copy of a StripedStats.
+     */
+    public static final class Snapshot {
+        public long count;
+        public double sum;
+        public double min;
+        public double max;
+        public double sumOfSquares;
+
+        public Snapshot() {
+            clear();
+        }
+
+        void clear() {
+            count = 0;
+            sum = 0;
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+            sumOfSquares = 0;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        public double standardDeviation() {
+            if (count == 0) {
+                return 0;
+            }
+            double mean = mean();
+            return Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.newrelic.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ * <p>
+ * Instead of a token count the bucket keeps the time at which it would be full again,
+ * so tryAcquire() is a clock read and a single CAS, and there is no refill task.
+ */
+public final class TokenBucket {
+
+    /* nanos one token takes to refill */
+    private final long refillNanos;
+
+    /* nanos it takes to refill a full bucket */
+    private final long capacityNanos;
+
+    /* time at which the bucket is full again */
+    private final AtomicLong fullAt;
+
+    /**
+     * @param permits permits per period, also the capacity of the bucket
+     * @param periodNanos period in nanoseconds
+     */
+    public TokenBucket(int permits, long periodNanos) {
+        if (permits <= 0 || periodNanos <= 0) {
+            throw new IllegalArgumentException("permits and period must be greater than 0");
+        }
+
+        this.refillNanos = Math.max(1, periodNanos / permits);
+        this.capacityNanos = refillNanos * permits;
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes one token if available.
+     *
+     * @return true if a token was taken, false if the bucket is empty
+     */
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long current = fullAt.get();
+            long next = (current - now > 0 ? current : now) + refillNanos;
+            if (next - now > capacityNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+}
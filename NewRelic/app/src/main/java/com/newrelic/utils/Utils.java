@@ -16,7 +16,30 @@ public class Utils {
      * @return true/false
      */
     public static boolean isEmptyOrNull(String text) {
-        return null == text || text.trim().length() == 0;
+        if (null == text) {
+            return true;
+        }
+
+        // same as text.trim().length() == 0, without allocating a trimmed copy
+        for (int i = 0, length = text.length(); i < length; i++) {
+            if (text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rounds a positive value up to the next power of two.
+     *
+     * @param value positive value
+     * @return power of two greater than or equal to value
+     */
+    public static int nextPowerOfTwo(int value) {
+        if (value <= 1) {
+            return 1;
+        }
+        return Integer.highestOneBit(value - 1) << 1;
     }
 
     /**
@@ -0,0 +1,180 @@
+package com.newrelic;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips of the attribute codec and its encoded sizes.
+ */
+public class NRAttributesTest {
+
+    /*
+     * Footprint estimate for a 64-bit VM with compressed references: 12 byte object headers,
+     * 16 byte array headers, 4 byte references, 8 byte alignment. Keys are not counted, they
+     * are usually literals shared by all maps, nor are cached boxes such as small Integers.
+     */
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    private static Map<String, Object> attributes(int i) {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("screen", "checkout");
+        attributes.put("itemCount", i % 10);
+        attributes.put("cartValue", 19.99 + i);
+        attributes.put("loggedIn", i % 2 == 0);
+        attributes.put("orderId", 1000000L + i);
+        return attributes;
+    }
+
+    @Test
+    public void roundTrip_keepsValuesAndTypes() {
+        Object custom = new Object();
+        Map<String, Object> attributes = attributes(7);
+        attributes.put("negative", -42);
+        attributes.put("ratio", 0.5f);
+        attributes.put("small", (short) 3);
+        attributes.put("tiny", (byte) -1);
+        attributes.put("unicode", "caf\u00e9 \u2713");
+        attributes.put("missing", null);
+        attributes.put("custom", custom);
+
+        Map<String, Object> decoded = NRAttributes.encode(attributes).toMap();
+
+        assertEquals(attributes, decoded);
+        assertSame(custom, decoded.get("custom"));
+        assertEquals(Integer.class, decoded.get("itemCount").getClass());
+        assertEquals(Long.class, decoded.get("orderId").getClass());
+    }
+
+    @Test
+    public void portable_decodesFromBytes() {
+        Map<String, Object> attributes = attributes(3);
+
+        NRAttributes encoded = NRAttributes.encodePortable(attributes);
+        Map<String, Object> decoded = NRAttributes.fromByteArray(encoded.toByteArray().clone(), encoded.size()).toMap();
+
+        assertEquals(attributes, decoded);
+    }
+
+    @Test
+    public void nullAndEmpty() {
+        assertNull(NRAttributes.encode(null));
+        assertTrue(NRAttributes.encode(new HashMap<String, Object>()).toMap().isEmpty());
+    }
+
+    @Test
+    public void encoded_doesNotSeeLaterChanges() {
+        Map<String, Object> attributes = attributes(1);
+        NRAttributes encoded = NRAttributes.encode(attributes);
+
+        attributes.put("screen", "changed");
+
+        assertEquals("checkout", encoded.toMap().get("screen"));
+    }
+
+    @Test
+    public void encoded_sizesPerValueType() {
+        // inline key "n": id 0, length, 1 byte, then the type tag and the value
+        assertEquals(5, portableSize(1));
+        assertEquals(5, portableSize(-1));
+        assertEquals(7, portableSize(1000000L));
+        assertEquals(12, portableSize(0.5));
+        assertEquals(8, portableSize(0.5f));
+        assertEquals(4, portableSize(true));
+        assertEquals(4, portableSize(null));
+        assertEquals(13, portableSize("checkout"));
+        // UTF-8 bytes, not chars
+        assertEquals(10, portableSize("caf\u00e9"));
+    }
+
+    @Test
+    public void encoded_writesInternedKeysAsIds() {
+        Map<String, Object> attributes = attributes(1);
+        NRAttributes encoded = NRAttributes.encode(attributes);
+        NRAttributes portable = NRAttributes.encodePortable(attributes);
+        assertEquals(5, encoded.size());
+        assertEquals(attributes, encoded.toMap());
+        assertEquals(attributes, NRAttributes.fromByteArray(portable.toByteArray(), portable.size()).toMap());
+
+        // the same values, each inline key (id 0, length, ASCII bytes) replaced by its dictionary id,
+        // whose width depends on how many keys the process has interned so far
+        int expected = portable.toByteArray().length;
+        for (String key : attributes.keySet()) {
+            int id = NRAttributes.keyId(key);
+            if (id != 0) {
+                expected += varIntSize(id) - (1 + varIntSize(key.length()) + key.length());
+            }
+        }
+        assertEquals(expected, encoded.toByteArray().length);
+    }
+
+    @Test
+    public void encoded_isSmallerThanTheHashMap() {
+        Map<String, Object> attributes = attributes(1);
+        NRAttributes encoded = NRAttributes.encode(attributes);
+
+        long map = hashMapFootprint(attributes);
+        long packed = align(OBJECT_HEADER + 2 * REFERENCE + 4) + align(ARRAY_HEADER + encoded.toByteArray().length);
+        assertTrue(packed + " bytes packed, " + map + " bytes as HashMap", packed * 3 < map);
+    }
+
+    private static long hashMapFootprint(Map<String, Object> attributes) {
+        // HashMap fields: table, entrySet, keySet, values, size, modCount, threshold, loadFactor
+        long size = align(OBJECT_HEADER + 4 * REFERENCE + 4 * 4);
+        int capacity = 16;
+        while (attributes.size() > capacity * 3 / 4) {
+            capacity *= 2;
+        }
+        size += align(ARRAY_HEADER + capacity * REFERENCE);
+        for (Object value : attributes.values()) {
+            // Node: hash, key, value, next
+            size += align(OBJECT_HEADER + 4 + 3 * REFERENCE);
+            size += valueFootprint(value);
+        }
+        return size;
+    }
+
+    private static long valueFootprint(Object value) {
+        if (value instanceof String) {
+            // String: value, hash, coder, and a byte array of Latin-1 chars
+            return align(OBJECT_HEADER + REFERENCE + 4 + 1) + align(ARRAY_HEADER + ((String) value).length());
+        }
+        if (value instanceof Integer && (Integer) value >= -128 && (Integer) value <= 127) {
+            return 0;
+        }
+        if (value instanceof Integer || value instanceof Float) {
+            return align(OBJECT_HEADER + 4);
+        }
+        if (value instanceof Long || value instanceof Double) {
+            return align(OBJECT_HEADER + 8);
+        }
+        // Boolean.TRUE and FALSE
+        return 0;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int portableSize(Object value) {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("n", value);
+        NRAttributes encoded = NRAttributes.encodePortable(attributes);
+        assertEquals(attributes, NRAttributes.fromByteArray(encoded.toByteArray(), encoded.size()).toMap());
+        return encoded.toByteArray().length;
+    }
+}
@@ -0,0 +1,134 @@
+package com.newrelic;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Overflow policies and worker behaviour of NRDispatcher against an NRRecordingBackend.
+ * The worker is started after the queue is filled, so overflow is deterministic.
+ */
+public class NRDispatcherTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private final NRRecordingBackend backend = new NRRecordingBackend();
+    private final NRInstance instance = new NRInstance(null, new NRConfig("token"), backend);
+
+    private static NRCall event(String eventName) {
+        Map<String, Object> attributes = Collections.emptyMap();
+        return new NRCall.CustomEvent("Checkout", eventName, attributes);
+    }
+
+    private static void awaitDispatched(NRDispatcher dispatcher, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (dispatcher.getDispatchedCount() < count) {
+            assertTrue("timed out waiting for the worker", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private String eventName(int index) {
+        List<NRRecordingBackend.Call> calls = backend.getCalls();
+        return (String) calls.get(index).args.get(1);
+    }
+
+    @Test
+    public void dropNewest_rejectsCallsWhileFull() throws InterruptedException {
+        NRDispatcher dispatcher = new NRDispatcher(instance, 2, NRConfig.OverflowPolicy.DROP_NEWEST);
+        assertTrue(dispatcher.dispatch(event("a")));
+        assertTrue(dispatcher.dispatch(event("b")));
+        assertFalse(dispatcher.dispatch(event("c")));
+        assertEquals(1, dispatcher.getDroppedCount());
+        assertEquals(2, dispatcher.getPendingCount());
+
+        dispatcher.start();
+        awaitDispatched(dispatcher, 2);
+        assertEquals("a", eventName(0));
+        assertEquals("b", eventName(1));
+    }
+
+    @Test
+    public void dropOldest_evictsTheHead() throws InterruptedException {
+        NRDispatcher dispatcher = new NRDispatcher(instance, 2, NRConfig.OverflowPolicy.DROP_OLDEST);
+        assertTrue(dispatcher.dispatch(event("a")));
+        assertTrue(dispatcher.dispatch(event("b")));
+        assertTrue(dispatcher.dispatch(event("c")));
+        assertEquals(1, dispatcher.getDroppedCount());
+
+        dispatcher.start();
+        awaitDispatched(dispatcher, 2);
+        assertEquals("b", eventName(0));
+        assertEquals("c", eventName(1));
+    }
+
+    @Test
+    public void block_waitsForRoom() throws InterruptedException {
+        final NRDispatcher dispatcher = new NRDispatcher(instance, 2, NRConfig.OverflowPolicy.BLOCK);
+        dispatcher.dispatch(event("a"));
+        dispatcher.dispatch(event("b"));
+
+        final CountDownLatch dispatched = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.dispatch(event("c"));
+                dispatched.countDown();
+            }
+        });
+        producer.start();
+        assertFalse(dispatched.await(50, TimeUnit.MILLISECONDS));
+
+        dispatcher.start();
+        assertTrue(dispatched.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        awaitDispatched(dispatcher, 3);
+        assertEquals(0, dispatcher.getDroppedCount());
+        assertEquals("c", eventName(2));
+    }
+
+    @Test
+    public void worker_survivesErrorsThrownByCalls() throws InterruptedException {
+        long failed = NRStats.INSTANCE.snapshot().getFailed(NRStats.Api.SET_USER_ID);
+        NRDispatcher dispatcher = new NRDispatcher(instance, 8, NRConfig.OverflowPolicy.DROP_NEWEST);
+        dispatcher.start();
+
+        dispatcher.dispatch(new Failing());
+        dispatcher.dispatch(event("after"));
+        awaitDispatched(dispatcher, 1);
+        assertEquals("after", eventName(0));
+
+        // counted against the API method of the failed call
+        assertEquals(failed + 1, NRStats.INSTANCE.snapshot().getFailed(NRStats.Api.SET_USER_ID));
+    }
+
+    @Test
+    public void worker_wakesUpForCallsDispatchedWhileIdle() throws InterruptedException {
+        NRDispatcher dispatcher = new NRDispatcher(instance, 8, NRConfig.OverflowPolicy.DROP_NEWEST);
+        dispatcher.start();
+
+        for (int i = 0; i < 100; i++) {
+            // give the worker time to park between calls
+            Thread.sleep(1);
+            dispatcher.dispatch(event("e" + i));
+        }
+        awaitDispatched(dispatcher, 100);
+        assertEquals("e99", eventName(99));
+    }
+
+    private static final class Failing extends NRCall {
+        Failing() {
+            super(NRStats.Api.SET_USER_ID);
+        }
+
+        @Override
+        boolean invoke(NRInstance instance) {
+            throw new StackOverflowError();
+        }
+    }
+}
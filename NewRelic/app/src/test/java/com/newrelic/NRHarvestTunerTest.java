@@ -0,0 +1,76 @@
+package com.newrelic;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decisions of NRHarvestTuner for steady event rates, ticked with explicit timestamps.
+ */
+public class NRHarvestTunerTest {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(NRHarvestTuner.TICK_MS);
+
+    private final NRRecordingBackend backend = new NRRecordingBackend();
+    private final NRHarvestTuner tuner = new NRHarvestTuner(new NRInstance(null, new NRConfig("token"), backend));
+
+    private long now = TICK_NANOS;
+
+    private void tick(int ticks, int eventsPerSecond) {
+        for (int i = 0; i < ticks; i++) {
+            for (int e = 0; e < eventsPerSecond * NRHarvestTuner.TICK_MS / 1000; e++) {
+                tuner.onEvent();
+            }
+            now += TICK_NANOS;
+            tuner.tick(now);
+        }
+    }
+
+    @Test
+    public void idleApp_buffersForTheLongestTime() {
+        tuner.tick(now);
+        tick(3, 0);
+
+        assertEquals(NRHarvestTuner.MAX_BUFFER_TIME, tuner.getBufferTime());
+        assertEquals(1, backend.count("setMaxEventBufferTime"));
+        // the pool is a cap, a smaller one would only drop bursts
+        assertEquals(NRHarvestTuner.DEFAULT_POOL_SIZE, tuner.getPoolSize());
+        assertEquals(0, backend.count("setMaxEventPoolSize"));
+    }
+
+    @Test
+    public void busyApp_pinnedAtTheBounds_appliesOnce() {
+        tuner.tick(now);
+        tick(10, 200);
+
+        assertEquals(NRHarvestTuner.MIN_BUFFER_TIME, tuner.getBufferTime());
+        assertEquals(0, backend.count("setMaxEventPoolSize"));
+        assertEquals(1, backend.count("setMaxEventBufferTime"));
+        // EventRate and BufferTime of the one decision
+        assertEquals(2, backend.count("recordMetric"));
+    }
+
+    @Test
+    public void rateChange_isApplied() {
+        tuner.tick(now);
+        tick(10, 0);
+        tick(10, 200);
+
+        assertEquals(NRHarvestTuner.MIN_BUFFER_TIME, tuner.getBufferTime());
+        assertEquals(2, backend.count("setMaxEventBufferTime"));
+    }
+
+    @Test
+    public void configuredPoolSize_shortensTheBufferTime() {
+        tuner.setPoolSize(100);
+        tuner.tick(now);
+        tick(3, 1);
+
+        // 80% of 100 events at 1 event per second
+        assertEquals(80, tuner.getBufferTime());
+        assertEquals(100, tuner.getPoolSize());
+        assertEquals(0, backend.count("setMaxEventPoolSize"));
+    }
+}
@@ -0,0 +1,99 @@
+package com.newrelic;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Aggregation and the MAX_METRICS bound of NRMetricAggregator, flushed into an NRRecordingBackend.
+ */
+public class NRMetricAggregatorTest {
+
+    private final NRRecordingBackend backend = new NRRecordingBackend();
+    private final NRMetricAggregator aggregator = new NRMetricAggregator(new NRInstance(null, new NRConfig("token"), backend));
+
+    @Test
+    public void flush_forwardsCountAndSumPerKey() {
+        aggregator.record("Latency", "Checkout", 2.0);
+        aggregator.record("Latency", "Checkout", 5.0);
+        aggregator.record("Latency", "Checkout", 1.0);
+        aggregator.record("Latency", "Checkout", 3.0, MetricUnit.OPERATIONS, MetricUnit.SECONDS);
+
+        aggregator.flush();
+
+        List<NRRecordingBackend.Call> calls = backend.getCalls();
+        assertEquals(2, calls.size());
+        assertEquals("recordMetric", calls.get(0).method);
+
+        NRRecordingBackend.Call plain = unitOf(calls, null);
+        assertEquals("Latency", plain.args.get(0));
+        assertEquals("Checkout", plain.args.get(1));
+        assertEquals(3, plain.args.get(2));
+        assertEquals(8.0, plain.args.get(3));
+        assertEquals(8.0, plain.args.get(4));
+
+        NRRecordingBackend.Call withUnits = unitOf(calls, MetricUnit.OPERATIONS);
+        assertEquals(1, withUnits.args.get(2));
+        assertEquals(3.0, withUnits.args.get(3));
+        assertEquals(MetricUnit.SECONDS, withUnits.args.get(6));
+    }
+
+    @Test
+    public void flush_drainsRecordedValues() {
+        aggregator.record("Latency", "Checkout", 2.0);
+        aggregator.flush();
+        backend.clear();
+
+        aggregator.flush();
+        assertTrue(backend.getCalls().isEmpty());
+
+        aggregator.record("Latency", "Checkout", 4.0);
+        aggregator.flush();
+        assertEquals(1, backend.getCalls().size());
+        assertEquals(1, backend.getCalls().get(0).args.get(2));
+        assertEquals(4.0, backend.getCalls().get(0).args.get(3));
+    }
+
+    @Test
+    public void record_rejectsNewKeysBeyondMaxMetrics() throws Exception {
+        for (int i = 0; i < NRMetricAggregator.MAX_METRICS; i++) {
+            assertTrue(aggregator.record("Metric" + i, "Category" + i, 1.0));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertFalse(aggregator.record("Overflow" + i, "OverflowCategory" + i, 1.0));
+            assertFalse(aggregator.record("Metric0", "Category0", 1.0, MetricUnit.BYTES, MetricUnit.BYTES));
+        }
+        // known keys are still aggregated
+        assertTrue(aggregator.record("Metric0", "Category0", 1.0));
+
+        // rejected keys leave nothing behind
+        assertEquals(NRMetricAggregator.MAX_METRICS, metrics().size());
+        assertNull(metrics().get("OverflowCategory0"));
+
+        aggregator.flush();
+        assertEquals(NRMetricAggregator.MAX_METRICS, backend.count("recordMetric"));
+    }
+
+    private Map<?, ?> metrics() throws Exception {
+        Field field = NRMetricAggregator.class.getDeclaredField("metrics");
+        field.setAccessible(true);
+        return (Map<?, ?>) field.get(aggregator);
+    }
+
+    private static NRRecordingBackend.Call unitOf(List<NRRecordingBackend.Call> calls, MetricUnit countUnit) {
+        for (NRRecordingBackend.Call call : calls) {
+            if (call.args.size() == 7 && countUnit == call.args.get(5)) {
+                return call;
+            }
+        }
+        fail("no recordMetric call with count unit " + countUnit);
+        return null;
+    }
+}
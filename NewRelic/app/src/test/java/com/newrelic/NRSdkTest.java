@@ -0,0 +1,213 @@
+package com.newrelic;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * NRSdk facade driven through NRRecordingBackend: argument validation, calls made before init()
+ * and features disabled in NRConfig.
+ */
+public class NRSdkTest {
+
+    private final NRRecordingBackend backend = new NRRecordingBackend();
+
+    @Before
+    public void setUp() {
+        NRSdk.reset();
+    }
+
+    private static Map<String, Object> attributes() {
+        return Collections.<String, Object>singletonMap("screen", "cart");
+    }
+
+    private static long rejected(NRStats.Api api) {
+        return NRSdk.getStats().getRejected(api);
+    }
+
+    @Test
+    public void init_startsTheBackendAndIsReady() throws Exception {
+        NRSdk.init(new NRConfig("token"), backend);
+
+        assertEquals(1, backend.count("start"));
+        assertEquals("token", backend.getCalls().get(0).args.get(0));
+        assertTrue(NRSdk.getReadyFuture().get());
+        assertTrue(NRSdk.getInitBlockingMillis() >= 0);
+    }
+
+    @Test
+    public void calls_areValidatedBeforeReachingTheBackend() {
+        NRSdk.init(new NRConfig("token"), backend);
+        backend.clear();
+
+        long rejectedEvents = rejected(NRStats.Api.RECORD_CUSTOM_EVENT);
+        long rejectedInteractions = rejected(NRStats.Api.START_INTERACTION);
+
+        assertFalse(NRSdk.recordCustomEvent(null, "name", attributes()));
+        assertFalse(NRSdk.recordCustomEvent("", "name", attributes()));
+        assertFalse(NRSdk.recordBreadcrumb(null, attributes()));
+        assertNull(NRSdk.startInteraction(""));
+        NRSdk.endInteraction(null);
+        NRSdk.setInteractionName(null);
+
+        assertTrue(backend.getCalls().isEmpty());
+        assertEquals(rejectedEvents + 2, rejected(NRStats.Api.RECORD_CUSTOM_EVENT));
+        assertEquals(rejectedInteractions + 1, rejected(NRStats.Api.START_INTERACTION));
+    }
+
+    @Test
+    public void calls_reachTheBackendOnceInitialized() {
+        NRSdk.init(new NRConfig("token"), backend);
+        backend.clear();
+
+        assertTrue(NRSdk.recordCustomEvent("Checkout", "paid", attributes()));
+        String interactionID = NRSdk.startInteraction("Checkout");
+        assertNotNull(interactionID);
+        NRSdk.endInteraction(interactionID);
+
+        List<NRRecordingBackend.Call> calls = backend.getCalls();
+        assertEquals(3, calls.size());
+        assertEquals("recordCustomEvent", calls.get(0).method);
+        assertEquals("Checkout", calls.get(0).args.get(0));
+        assertEquals("paid", calls.get(0).args.get(1));
+        assertEquals("cart", ((Map<?, ?>) calls.get(0).args.get(2)).get("screen"));
+        assertEquals("startInteraction", calls.get(1).method);
+        assertEquals("endInteraction", calls.get(2).method);
+        assertEquals(interactionID, calls.get(2).args.get(0));
+    }
+
+    @Test
+    public void callsBeforeInit_areReplayedInOrder() {
+        long replayed = NRSdk.getPreInitReplayedCount();
+
+        assertTrue(NRSdk.recordCustomEvent("Checkout", "early", attributes()));
+        NRSdk.setInteractionName("Splash");
+        assertTrue(NRSdk.recordBreadcrumb("launched", attributes()));
+        assertTrue(backend.getCalls().isEmpty());
+
+        NRSdk.init(new NRConfig("token"), backend);
+
+        List<NRRecordingBackend.Call> calls = backend.getCalls();
+        assertEquals("start", calls.get(0).method);
+        assertEquals("recordCustomEvent", calls.get(1).method);
+        assertEquals("early", calls.get(1).args.get(1));
+        assertEquals("setInteractionName", calls.get(2).method);
+        assertEquals("Splash", calls.get(2).args.get(0));
+        assertEquals("recordBreadcrumb", calls.get(3).method);
+        assertEquals("launched", calls.get(3).args.get(0));
+        assertEquals(replayed + 3, NRSdk.getPreInitReplayedCount());
+    }
+
+    @Test
+    public void callsBeforeInit_keepTheirAttributesThroughAsyncDispatch() throws Exception {
+        assertTrue(NRSdk.recordCustomEvent("Early", "e", attributes()));
+        assertTrue(NRSdk.recordBreadcrumb("launched", attributes()));
+        assertTrue(NRSdk.recordHandledException(new IllegalStateException("early"), attributes()));
+
+        NRSdk.init(new NRConfig("token").withAsyncDispatch(true), backend);
+
+        // replayed calls are handed to the dispatcher thread
+        long deadline = System.currentTimeMillis() + 5000;
+        while (backend.count("recordHandledException") == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        for (NRRecordingBackend.Call call : backend.getCalls()) {
+            if (call.method.equals("recordCustomEvent") || call.method.equals("recordBreadcrumb")
+                    || call.method.equals("recordHandledException")) {
+                Map<?, ?> callAttributes = (Map<?, ?>) call.args.get(call.args.size() - 1);
+                assertNotNull(call.method, callAttributes);
+                assertEquals(call.method, "cart", callAttributes.get("screen"));
+            }
+        }
+        assertEquals(1, backend.count("recordCustomEvent"));
+        assertEquals(1, backend.count("recordBreadcrumb"));
+        assertEquals(1, backend.count("recordHandledException"));
+    }
+
+    @Test
+    public void responseBodies_areCutToTheCaptureLimit() {
+        // buffered before the limit is known, cut when replayed
+        NRSdk.noticeHttpTransaction("https://example.com/early", "GET", 500, 1, 2, 0, 10, "early body");
+        NRSdk.noticeHttpTransaction("https://example.com/ok", "GET", 200, 1, 2, 0, 10, "ok body");
+
+        NRSdk.init(new NRConfig("token").withResponseBodyCapture(5), backend);
+        NRSdk.noticeHttpTransaction("https://example.com/late", "GET", 404, 1, 2, 0, 10, "late body");
+
+        List<Object> bodies = new ArrayList<>();
+        for (NRRecordingBackend.Call call : backend.getCalls()) {
+            if (call.method.equals("noticeHttpTransaction")) {
+                // noticeHttpTransaction(url, httpMethod, statusCode, startTime, endTime, bytesSent, bytesReceived, responseBody)
+                bodies.add(call.args.get(7));
+            }
+        }
+        assertEquals(Arrays.<Object>asList("early", null, "late "), bodies);
+    }
+
+    @Test
+    public void callsBeforeInit_thatCanNotBeBufferedAreRejected() {
+        assertNull(NRSdk.startInteraction("Checkout"));
+        assertNull(NRSdk.currentSessionId());
+
+        NRSdk.init(new NRConfig("token"), backend);
+        assertEquals(0, backend.count("startInteraction"));
+        assertEquals(0, backend.count("currentSessionId"));
+    }
+
+    @Test
+    public void spans_reportWithoutCountingAsApiCalls() {
+        NRSdk.init(new NRConfig("token"), backend);
+        backend.clear();
+
+        NRStats.Snapshot before = NRSdk.getStats();
+        NRSpan span = NRSdk.startSpan("Checkout");
+        span.close();
+        NRStats.Snapshot after = NRSdk.getStats();
+
+        assertEquals(1, backend.count("startInteraction"));
+        assertEquals(1, backend.count("endInteraction"));
+        assertEquals(span.getInteractionID(), backend.getCalls().get(2).args.get(0));
+        NRRecordingBackend.Call metric = backend.getCalls().get(1);
+        assertEquals("recordMetric", metric.method);
+        assertEquals(NRSpans.METRIC_CATEGORY, metric.args.get(1));
+
+        for (NRStats.Api api : new NRStats.Api[]{NRStats.Api.START_INTERACTION, NRStats.Api.END_INTERACTION, NRStats.Api.RECORD_METRIC}) {
+            assertEquals(api.getMethodName(), before.getCalls(api), after.getCalls(api));
+        }
+    }
+
+    @Test
+    public void disabledAnalyticsEvents_areNoOps() {
+        NRSdk.init(new NRConfig("token").withAnalyticsEvents(false), backend);
+        backend.clear();
+
+        assertFalse(NRSdk.recordCustomEvent("Checkout", "paid", attributes()));
+        assertFalse(NRSdk.recordBreadcrumb("launched", attributes()));
+        // disabled features skip validation as well
+        assertFalse(NRSdk.recordCustomEvent(null, null, null));
+
+        assertEquals(0, backend.count("recordCustomEvent"));
+        assertEquals(0, backend.count("recordBreadcrumb"));
+    }
+
+    @Test
+    public void disabledInteractionTracking_doesNotReachTheBackend() {
+        NRSdk.init(new NRConfig("token").withInteractionTracking(false), backend);
+        backend.clear();
+
+        String interactionID = NRSdk.startInteraction("Checkout");
+        NRSdk.setInteractionName("Cart");
+        NRSdk.endInteraction(null == interactionID ? "id" : interactionID);
+
+        assertEquals(0, backend.count("startInteraction"));
+        assertEquals(0, backend.count("setInteractionName"));
+        assertEquals(0, backend.count("endInteraction"));
+    }
+}
@@ -0,0 +1,168 @@
+package com.newrelic;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Recovery of spooled events by the next process, simulated by a second NRSpool on the same directory.
+ */
+public class NRSpoolTest {
+
+    private static final int MAX_SIZE = 256 * 1024;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("nrspool").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private NRSpool spoolEvents(int count) {
+        NRSpool spool = new NRSpool(directory, MAX_SIZE);
+        assertEquals(0, spool.open(new NRRecordingBackend()));
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> attributes = new HashMap<>();
+            attributes.put("index", i);
+            spool.appendCustomEvent("Checkout", "event" + i, attributes);
+        }
+        spool.appendBreadcrumb("crumb", Collections.<String, Object>singletonMap("screen", "cart"));
+        assertEquals(count + 1, spool.getSpooledCount());
+        return spool;
+    }
+
+    @Test
+    public void open_replaysPreviousEventsToTheBackend() {
+        spoolEvents(3);
+
+        NRRecordingBackend backend = new NRRecordingBackend();
+        NRSpool next = new NRSpool(directory, MAX_SIZE);
+        assertEquals(4, next.open(backend));
+        assertEquals(4, next.getRecoveredCount());
+
+        List<NRRecordingBackend.Call> calls = backend.getCalls();
+        assertEquals(4, calls.size());
+        for (int i = 0; i < 3; i++) {
+            NRRecordingBackend.Call call = calls.get(i);
+            assertEquals("recordCustomEvent", call.method);
+            assertEquals("Checkout", call.args.get(0));
+            assertEquals("event" + i, call.args.get(1));
+            Map<?, ?> attributes = (Map<?, ?>) call.args.get(2);
+            assertEquals(i, attributes.get("index"));
+            assertEquals(Boolean.TRUE, attributes.get(NRSpool.RECOVERED_ATTRIBUTE));
+        }
+        assertEquals("recordBreadcrumb", calls.get(3).method);
+        assertEquals("cart", ((Map<?, ?>) calls.get(3).args.get(1)).get("screen"));
+
+        // recovered events are not spooled again
+        assertEquals(0, next.getSpooledCount());
+    }
+
+    @Test
+    public void open_replaysEachSegmentOnce() {
+        spoolEvents(3);
+        assertEquals(4, new NRSpool(directory, MAX_SIZE).open(new NRRecordingBackend()));
+
+        NRRecordingBackend backend = new NRRecordingBackend();
+        assertEquals(0, new NRSpool(directory, MAX_SIZE).open(backend));
+        assertTrue(backend.getCalls().isEmpty());
+    }
+
+    @Test
+    public void open_dropsSegmentWhoseReplayWasCutShort() {
+        spoolEvents(3);
+        File[] segments = directory.listFiles();
+        assertNotNull(segments);
+        for (File segment : segments) {
+            assertTrue(segment.renameTo(new File(directory, segment.getName() + ".replayed")));
+        }
+
+        NRRecordingBackend backend = new NRRecordingBackend();
+        assertEquals(0, new NRSpool(directory, MAX_SIZE).open(backend));
+        assertTrue(backend.getCalls().isEmpty());
+
+        File[] left = directory.listFiles();
+        assertNotNull(left);
+        for (File file : left) {
+            assertFalse(file.getName(), file.getName().endsWith(".replayed"));
+        }
+    }
+
+    @Test
+    public void rotate_swapsInTheSpareAndRetiresTheOldestSegment() {
+        // the smallest segments, so a few hundred events fill one
+        int maxSize = NRSpool.MIN_SEGMENT_SIZE * NRSpool.SEGMENTS;
+        NRSpool spool = new NRSpool(directory, maxSize);
+        assertEquals(0, spool.open(new NRRecordingBackend()));
+
+        int count = 2000;
+        for (int i = 0; i < count; i++) {
+            spool.appendCustomEvent("Checkout", "event" + i, Collections.<String, Object>singletonMap("index", i));
+            if (i % 50 == 0) {
+                // what the scheduler does after each rotation
+                spool.prepare();
+            }
+        }
+        spool.prepare();
+
+        assertEquals(count, spool.getSpooledCount());
+        assertTrue(spool.getDroppedCount() > 0);
+
+        // closed segments below the cap, the current and the spare segment
+        File[] files = directory.listFiles();
+        assertNotNull(files);
+        assertTrue(files.length <= NRSpool.SEGMENTS + 1);
+
+        NRRecordingBackend backend = new NRRecordingBackend();
+        assertEquals(count - spool.getDroppedCount(), new NRSpool(directory, maxSize).open(backend));
+        List<NRRecordingBackend.Call> calls = backend.getCalls();
+        assertEquals("event" + (count - 1), calls.get(calls.size() - 1).args.get(1));
+    }
+
+    @Test
+    public void eventsBeforeOpen_areSpooledOnceOpened() {
+        NRSpool spool = new NRSpool(directory, MAX_SIZE);
+        spool.appendCustomEvent("Checkout", "early", Collections.<String, Object>singletonMap("index", 0));
+        assertEquals(0, spool.getSpooledCount());
+
+        assertEquals(0, spool.open(new NRRecordingBackend()));
+        assertEquals(1, spool.getSpooledCount());
+
+        NRRecordingBackend backend = new NRRecordingBackend();
+        assertEquals(1, new NRSpool(directory, MAX_SIZE).open(backend));
+        assertEquals("early", backend.getCalls().get(0).args.get(1));
+    }
+
+    @Test
+    public void onBackground_retiresEventsRecordedBefore() {
+        NRSpool spool = spoolEvents(3);
+        spool.onBackground();
+        spool.prepare();
+        spool.appendCustomEvent("Checkout", "afterHarvest", Collections.<String, Object>singletonMap("index", 3));
+
+        NRRecordingBackend backend = new NRRecordingBackend();
+        assertEquals(1, new NRSpool(directory, MAX_SIZE).open(backend));
+        assertEquals("afterHarvest", backend.getCalls().get(0).args.get(1));
+    }
+}
@@ -0,0 +1,125 @@
+package com.newrelic.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * FIFO order, capacity and concurrent producers of MpscBoundedQueue.
+ */
+public class MpscBoundedQueueTest {
+
+    @Test
+    public void capacity_isRoundedUpToAPowerOfTwo() {
+        assertEquals(8, new MpscBoundedQueue<Integer>(5).capacity());
+        assertEquals(8, new MpscBoundedQueue<Integer>(8).capacity());
+        assertEquals(1, new MpscBoundedQueue<Integer>(1).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsZeroCapacity() {
+        new MpscBoundedQueue<Integer>(0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void offer_rejectsNull() {
+        new MpscBoundedQueue<Integer>(4).offer(null);
+    }
+
+    @Test
+    public void offerAndPoll_keepFifoOrderUntilFull() {
+        MpscBoundedQueue<Integer> queue = new MpscBoundedQueue<>(4);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.size());
+
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue(queue.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void wrapsAroundManyTimes() {
+        MpscBoundedQueue<Integer> queue = new MpscBoundedQueue<>(2);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(queue.offer(i));
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void concurrentProducers_loseNothingAndKeepPerProducerOrder() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 20000;
+        final MpscBoundedQueue<int[]> queue = new MpscBoundedQueue<>(64);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perProducer; i++) {
+                        int[] element = {producer, i};
+                        while (!queue.offer(element)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        start.countDown();
+
+        int[] next = new int[producers];
+        AtomicInteger received = new AtomicInteger();
+        while (received.get() < producers * perProducer) {
+            int[] element = queue.poll();
+            if (null == element) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(next[element[0]], element[1]);
+            next[element[0]]++;
+            received.incrementAndGet();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void pollByProducer_makesRoomForDropOldest() {
+        MpscBoundedQueue<Integer> queue = new MpscBoundedQueue<>(2);
+        queue.offer(1);
+        queue.offer(2);
+        assertFalse(queue.offer(3));
+
+        assertEquals(Integer.valueOf(1), queue.poll());
+        assertTrue(queue.offer(3));
+        assertEquals(Integer.valueOf(2), queue.poll());
+        assertEquals(Integer.valueOf(3), queue.poll());
+    }
+}
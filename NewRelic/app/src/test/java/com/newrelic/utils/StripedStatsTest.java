@@ -0,0 +1,71 @@
+package com.newrelic.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Accumulated and drained values of StripedStats.
+ */
+public class StripedStatsTest {
+
+    @Test
+    public void drainTo_returnsCountSumMinMax() {
+        StripedStats stats = new StripedStats();
+        stats.record(2.0);
+        stats.record(-1.0);
+        stats.record(5.0);
+
+        StripedStats.Snapshot s = stats.drainTo(new StripedStats.Snapshot());
+        assertEquals(3, s.count);
+        assertEquals(6.0, s.sum, 0.0);
+        assertEquals(-1.0, s.min, 0.0);
+        assertEquals(5.0, s.max, 0.0);
+        assertEquals(30.0, s.sumOfSquares, 0.0);
+        assertEquals(2.0, s.mean(), 0.0);
+    }
+
+    @Test
+    public void drainTo_resetsForTheNextInterval() {
+        StripedStats stats = new StripedStats();
+        stats.record(7.0);
+        stats.drainTo(new StripedStats.Snapshot());
+
+        StripedStats.Snapshot empty = stats.drainTo(new StripedStats.Snapshot());
+        assertEquals(0, empty.count);
+        assertEquals(0.0, empty.sum, 0.0);
+
+        stats.record(3.0);
+        StripedStats.Snapshot s = stats.drainTo(new StripedStats.Snapshot());
+        assertEquals(1, s.count);
+        assertEquals(3.0, s.min, 0.0);
+        assertEquals(3.0, s.max, 0.0);
+    }
+
+    @Test
+    public void record_mergesConcurrentWriters() throws InterruptedException {
+        final StripedStats stats = new StripedStats();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        stats.record(offset);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        StripedStats.Snapshot s = stats.drainTo(new StripedStats.Snapshot());
+        assertEquals(40000, s.count);
+        assertEquals(60000.0, s.sum, 0.0);
+        assertEquals(0.0, s.min, 0.0);
+        assertEquals(3.0, s.max, 0.0);
+    }
+}
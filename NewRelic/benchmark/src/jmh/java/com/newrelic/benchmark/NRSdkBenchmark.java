@@ -0,0 +1,107 @@
+package com.newrelic.benchmark;
+
+import android.app.Application;
+
+import com.newrelic.NRConfig;
+import com.newrelic.NRSdk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the NRSdk facade hot paths on top of a no-op agent (see src/stubs).
+ * Every benchmark runs at 1, 4 and 16 threads through the nested subclasses,
+ * and once per config profile:
+ * <ul>
+ * <li>sync - calls go straight to the agent on the caller's thread</li>
+ * <li>async - calls are queued to the dispatcher thread</li>
+ * <li>aggregation - async, plus recordMetric() values are pre-aggregated in process</li>
+ * </ul>
+ * Each profile runs in its own fork, as NRSdk can only be started once per process.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public abstract class NRSdkBenchmark {
+
+    @Param({"sync", "async", "aggregation"})
+    public String profile;
+
+    private Map<String, Object> attributes;
+    private Exception exception;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        NRConfig config = new NRConfig("benchmark-token")
+                .withAnalyticsEvents(true);
+
+        if ("async".equals(profile) || "aggregation".equals(profile)) {
+            config.withAsyncDispatch(true)
+                    .withOverflowPolicy(NRConfig.OverflowPolicy.DROP_OLDEST);
+        }
+        if ("aggregation".equals(profile)) {
+            config.withMetricAggregation(true);
+        }
+
+        NRSdk.init(new Application(), config);
+
+        attributes = new HashMap<>();
+        attributes.put("screen", "checkout");
+        attributes.put("items", 3);
+        attributes.put("total", 42.5);
+        attributes.put("loggedIn", true);
+
+        // created once, the cost of filling in a stack trace is not the SDK's
+        exception = new IllegalStateException("benchmark");
+    }
+
+    @Benchmark
+    public boolean recordCustomEvent() {
+        return NRSdk.recordCustomEvent("BenchmarkEvent", "purchase", attributes);
+    }
+
+    @Benchmark
+    public boolean recordBreadcrumb() {
+        return NRSdk.recordBreadcrumb("tap", attributes);
+    }
+
+    @Benchmark
+    public void recordMetric() {
+        NRSdk.recordMetric("latency", "Benchmark", 12.5);
+    }
+
+    @Benchmark
+    public void noticeHttpTransaction() {
+        NRSdk.noticeHttpTransaction("https://api.example.com/v1/orders/42", "GET", 200,
+                1000L, 1250L, 512L, 2048L, null);
+    }
+
+    @Benchmark
+    public boolean recordHandledException() {
+        return NRSdk.recordHandledException(exception, attributes);
+    }
+
+    @Threads(1)
+    public static class OneThread extends NRSdkBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends NRSdkBenchmark {
+    }
+
+    @Threads(16)
+    public static class SixteenThreads extends NRSdkBenchmark {
+    }
+}
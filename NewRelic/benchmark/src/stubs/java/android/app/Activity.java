@@ -0,0 +1,15 @@
+package android.app;
+
+import android.view.Window;
+
+/**
+ * JVM stub of the Android Activity.
+ */
+public class Activity {
+
+    private final Window window = new Window();
+
+    public Window getWindow() {
+        return window;
+    }
+}
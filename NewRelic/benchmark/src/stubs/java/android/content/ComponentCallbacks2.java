@@ -0,0 +1,11 @@
+package android.content;
+
+/**
+ * JVM stub of the Android ComponentCallbacks2.
+ */
+public interface ComponentCallbacks2 extends ComponentCallbacks {
+
+    int TRIM_MEMORY_UI_HIDDEN = 20;
+
+    void onTrimMemory(int level);
+}
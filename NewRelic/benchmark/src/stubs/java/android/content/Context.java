@@ -0,0 +1,19 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * JVM stub of the Android Context, just enough to run the facade in benchmarks.
+ */
+public abstract class Context {
+
+    public abstract Context getApplicationContext();
+
+    public abstract File getFilesDir();
+
+    /**
+     * The app never goes to the background, callbacks are never called.
+     */
+    public void registerComponentCallbacks(ComponentCallbacks callback) {
+    }
+}
@@ -0,0 +1,7 @@
+package android.content.res;
+
+/**
+ * JVM stub of the Android Configuration.
+ */
+public final class Configuration {
+}
@@ -0,0 +1,7 @@
+package android.os;
+
+/**
+ * JVM stub of the Android Bundle.
+ */
+public final class Bundle {
+}
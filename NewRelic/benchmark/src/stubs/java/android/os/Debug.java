@@ -0,0 +1,14 @@
+package android.os;
+
+/**
+ * JVM stub of the Android Debug. No debugger is ever connected.
+ */
+public final class Debug {
+
+    private Debug() {
+    }
+
+    public static boolean isDebuggerConnected() {
+        return false;
+    }
+}
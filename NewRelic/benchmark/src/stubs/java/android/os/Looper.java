@@ -0,0 +1,23 @@
+package android.os;
+
+/**
+ * JVM stub of the Android Looper. The thread that loads the class acts as main thread.
+ */
+public final class Looper {
+
+    private static final Looper mainLooper = new Looper(Thread.currentThread());
+
+    private final Thread thread;
+
+    private Looper(Thread thread) {
+        this.thread = thread;
+    }
+
+    public static Looper getMainLooper() {
+        return mainLooper;
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+}
@@ -0,0 +1,26 @@
+package android.view;
+
+/**
+ * JVM stub of the Android Choreographer. No frames are ever drawn, callbacks are dropped.
+ */
+public final class Choreographer {
+
+    public interface FrameCallback {
+        void doFrame(long frameTimeNanos);
+    }
+
+    private static final Choreographer instance = new Choreographer();
+
+    private Choreographer() {
+    }
+
+    public static Choreographer getInstance() {
+        return instance;
+    }
+
+    public void postFrameCallback(FrameCallback callback) {
+    }
+
+    public void removeFrameCallback(FrameCallback callback) {
+    }
+}
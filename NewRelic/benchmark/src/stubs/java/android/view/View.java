@@ -0,0 +1,13 @@
+package android.view;
+
+/**
+ * JVM stub of the Android View. Nothing is ever drawn.
+ */
+public class View {
+
+    private final ViewTreeObserver observer = new ViewTreeObserver();
+
+    public ViewTreeObserver getViewTreeObserver() {
+        return observer;
+    }
+}
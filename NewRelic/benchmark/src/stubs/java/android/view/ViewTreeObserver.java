@@ -0,0 +1,21 @@
+package android.view;
+
+/**
+ * JVM stub of the Android ViewTreeObserver. Listeners are never called.
+ */
+public final class ViewTreeObserver {
+
+    public interface OnDrawListener {
+        void onDraw();
+    }
+
+    public boolean isAlive() {
+        return true;
+    }
+
+    public void addOnDrawListener(OnDrawListener listener) {
+    }
+
+    public void removeOnDrawListener(OnDrawListener listener) {
+    }
+}
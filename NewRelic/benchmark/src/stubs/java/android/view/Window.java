@@ -0,0 +1,13 @@
+package android.view;
+
+/**
+ * JVM stub of the Android Window.
+ */
+public class Window {
+
+    private final View decorView = new View();
+
+    public View getDecorView() {
+        return decorView;
+    }
+}
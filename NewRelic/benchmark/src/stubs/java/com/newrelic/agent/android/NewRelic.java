@@ -0,0 +1,107 @@
+package com.newrelic.agent.android;
+
+import android.content.Context;
+
+import com.newrelic.agent.android.metric.MetricUnit;
+
+import java.util.Map;
+
+/**
+ * JVM stub of the agent's static API. Every call is a no-op, so benchmarks measure
+ * the cost of the NRSdk facade alone.
+ */
+public final class NewRelic {
+
+    private NewRelic() {
+    }
+
+    public static NewRelic withApplicationToken(String token) {
+        return new NewRelic();
+    }
+
+    public NewRelic withDefaultInteractions(boolean enabled) {
+        return this;
+    }
+
+    public NewRelic withCrashReportingEnabled(boolean enabled) {
+        return this;
+    }
+
+    public NewRelic withLoggingEnabled(boolean enabled) {
+        return this;
+    }
+
+    public NewRelic withAnalyticsEvents(boolean enabled) {
+        return this;
+    }
+
+    public NewRelic withInteractionTracing(boolean enabled) {
+        return this;
+    }
+
+    public void start(Context context) {
+    }
+
+    public static String startInteraction(String actionName) {
+        return actionName;
+    }
+
+    public static void endInteraction(String interactionID) {
+    }
+
+    public static void setInteractionName(String interactionName) {
+    }
+
+    public static boolean recordBreadcrumb(String eventName, Map<String, Object> eventAttributes) {
+        return true;
+    }
+
+    public static boolean recordCustomEvent(String eventType, String eventName, Map<String, Object> eventAttributes) {
+        return true;
+    }
+
+    public static void crashNow() {
+    }
+
+    public static void crashNow(String message) {
+    }
+
+    public static String currentSessionId() {
+        return "benchmark-session";
+    }
+
+    public static void noticeHttpTransaction(String url, String httpMethod, int statusCode, long startTime, long endTime, long bytesSent, long bytesReceived) {
+    }
+
+    public static void noticeHttpTransaction(String url, String httpMethod, int statusCode, long startTime, long endTime, long bytesSent, long bytesReceived, String responseBody) {
+    }
+
+    public static void noticeNetworkFailure(String url, String httpMethod, long startTime, long endTime, Exception exception) {
+    }
+
+    public static boolean recordHandledException(Exception exception, Map<String, Object> exceptionAttributes) {
+        return true;
+    }
+
+    public static void setMaxEventBufferTime(int maxBufferTimeInSec) {
+    }
+
+    public static void setMaxEventPoolSize(int maxSize) {
+    }
+
+    public static boolean setUserId(String userId) {
+        return true;
+    }
+
+    public static void recordMetric(String name, String category) {
+    }
+
+    public static void recordMetric(String name, String category, double value) {
+    }
+
+    public static void recordMetric(String name, String category, int count, double totalValue, double exclusiveValue) {
+    }
+
+    public static void recordMetric(String name, String category, int count, double totalValue, double exclusiveValue, MetricUnit countUnit, MetricUnit valueUnit) {
+    }
+}
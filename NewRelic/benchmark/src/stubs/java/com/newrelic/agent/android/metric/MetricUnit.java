@@ -0,0 +1,22 @@
+package com.newrelic.agent.android.metric;
+
+/**
+ * JVM stub of the agent's MetricUnit.
+ */
+public enum MetricUnit {
+    PERCENT("%"),
+    BYTES("bytes"),
+    SECONDS("sec"),
+    BYTES_PER_SECOND("bytes/second"),
+    OPERATIONS("op");
+
+    private final String label;
+
+    MetricUnit(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,50 @@
+package com.newrelic.okhttp;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+
+/**
+ * Request body counting the bytes written by the wrapped body. OkHttp writes the body again
+ * on retries and redirects, only the last attempt is counted.
+ */
+class CountingRequestBody extends RequestBody {
+
+    private final RequestBody delegate;
+    private final NRTransaction transaction;
+
+    CountingRequestBody(RequestBody delegate, NRTransaction transaction) {
+        this.delegate = delegate;
+        this.transaction = transaction;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        transaction.resetBytesSent();
+        BufferedSink counting = Okio.buffer(new ForwardingSink(sink) {
+            @Override
+            public void write(Buffer source, long byteCount) throws IOException {
+                super.write(source, byteCount);
+                transaction.addBytesSent(byteCount);
+            }
+        });
+        delegate.writeTo(counting);
+        // hand everything to the real sink, which OkHttp flushes and closes itself
+        counting.emit();
+    }
+}
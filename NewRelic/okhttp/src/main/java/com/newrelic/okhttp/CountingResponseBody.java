@@ -0,0 +1,88 @@
+package com.newrelic.okhttp;
+
+import java.io.IOException;
+
+import com.newrelic.NRBodyCapture;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Response body counting the bytes read by the app, and completing the transaction once
+ * the body is read to the end or closed. The first bytes of error responses are copied
+ * to the transaction's NRBodyCapture as they are read.
+ */
+class CountingResponseBody extends ResponseBody {
+
+    private final ResponseBody delegate;
+    private final NRTransaction transaction;
+    private BufferedSource source;
+
+    CountingResponseBody(ResponseBody delegate, NRTransaction transaction) {
+        this.delegate = delegate;
+        this.transaction = transaction;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public synchronized BufferedSource source() {
+        if (null == source) {
+            source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read;
+                    try {
+                        read = super.read(sink, byteCount);
+                    } catch (IOException e) {
+                        transaction.fail(e);
+                        throw e;
+                    }
+
+                    if (read == -1) {
+                        transaction.complete();
+                    } else {
+                        transaction.addBytesReceived(read);
+                        capture(sink, read);
+                    }
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    transaction.complete();
+                }
+            });
+        }
+        return source;
+    }
+
+    /**
+     * Copies the bytes just read into the body capture, until it is full.
+     */
+    private void capture(Buffer sink, long read) throws IOException {
+        NRBodyCapture capture = transaction.getBodyCapture();
+        if (null == capture) {
+            return;
+        }
+
+        long count = Math.min(read, capture.remaining());
+        if (count > 0) {
+            // the bytes read are the last ones in the sink
+            sink.copyTo(capture, sink.size() - read, count);
+        }
+    }
+}
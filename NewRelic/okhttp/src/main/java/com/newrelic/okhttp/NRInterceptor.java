@@ -0,0 +1,59 @@
+package com.newrelic.okhttp;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * OkHttp interceptor reporting each request through NRSdk.noticeHttpTransaction(), or
+ * NRSdk.noticeNetworkFailure() if it fails.
+ * <pre>
+ * OkHttpClient client = new OkHttpClient.Builder()
+ *         .addInterceptor(new NRInterceptor())
+ *         .build();
+ * </pre>
+ * Bytes are counted as the request and response bodies stream through, so chunked bodies
+ * are counted too and nothing is buffered. A request is reported once its response body is
+ * read to the end or closed, on a background thread.
+ * Add it as an application interceptor to report one transaction per call, or as a network
+ * interceptor to report every redirect and retry.
+ */
+public final class NRInterceptor implements Interceptor {
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        NRTransaction transaction = new NRTransaction(request.url().toString(), request.method());
+
+        RequestBody requestBody = request.body();
+        if (null != requestBody) {
+            request = request.newBuilder()
+                    .method(request.method(), new CountingRequestBody(requestBody, transaction))
+                    .build();
+        }
+
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            transaction.fail(e);
+            throw e;
+        }
+
+        transaction.setStatusCode(response.code());
+
+        ResponseBody responseBody = response.body();
+        if (null == responseBody) {
+            transaction.complete();
+            return response;
+        }
+
+        return response.newBuilder()
+                .body(new CountingResponseBody(responseBody, transaction))
+                .build();
+    }
+}
@@ -0,0 +1,145 @@
+package com.newrelic.okhttp;
+
+import com.newrelic.NRBodyCapture;
+import com.newrelic.NRSdk;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State of one intercepted request, reported once.
+ * <p>
+ * Times are taken from System.nanoTime() and converted to epoch milliseconds against the wall
+ * clock read at the start, so a clock change during the request does not skew its duration.
+ */
+class NRTransaction {
+
+    /* bound on reports waiting for the reporter thread, the oldest is dropped beyond it */
+    private static final int MAX_PENDING_REPORTS = 1024;
+
+    private static final Executor reporter = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(MAX_PENDING_REPORTS),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "NRSdk-okhttp");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            },
+            new ThreadPoolExecutor.DiscardOldestPolicy());
+
+    private final String url;
+    private final String httpMethod;
+    private final long startTime;
+    private final long startNanos;
+
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private volatile int statusCode;
+
+    /* prefix of an error response body, null unless enabled in NRConfig */
+    private volatile NRBodyCapture bodyCapture;
+
+    private final AtomicBoolean reported = new AtomicBoolean(false);
+
+    NRTransaction(String url, String httpMethod) {
+        this.url = url;
+        this.httpMethod = httpMethod;
+        this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts counting the request body again, it is written once per attempt.
+     */
+    void resetBytesSent() {
+        bytesSent.set(0);
+    }
+
+    void addBytesSent(long count) {
+        bytesSent.addAndGet(count);
+    }
+
+    void addBytesReceived(long count) {
+        bytesReceived.addAndGet(count);
+    }
+
+    long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    void setStatusCode(int statusCode) {
+        this.statusCode = statusCode;
+        this.bodyCapture = NRBodyCapture.start(statusCode);
+    }
+
+    /**
+     * @return capture for the response body, null if it is not captured
+     */
+    NRBodyCapture getBodyCapture() {
+        return bodyCapture;
+    }
+
+    /**
+     * Reports the request as completed, only the first complete() or fail() has an effect.
+     */
+    void complete() {
+        if (!reported.compareAndSet(false, true)) {
+            return;
+        }
+
+        final long endTime = endTime();
+        final NRBodyCapture capture = bodyCapture;
+        reporter.execute(new Runnable() {
+            @Override
+            public void run() {
+                String responseBody = null == capture ? null : capture.finish();
+                NRSdk.noticeHttpTransaction(url, httpMethod, statusCode, startTime, endTime,
+                        bytesSent.get(), bytesReceived.get(), responseBody);
+            }
+        });
+    }
+
+    /**
+     * Reports the request as failed, only the first complete() or fail() has an effect.
+     */
+    void fail(final Exception exception) {
+        if (!reported.compareAndSet(false, true)) {
+            return;
+        }
+
+        final long endTime = endTime();
+        NRBodyCapture capture = bodyCapture;
+        if (null != capture) {
+            capture.discard();
+        }
+        reporter.execute(new Runnable() {
+            @Override
+            public void run() {
+                NRSdk.noticeNetworkFailure(url, httpMethod, startTime, endTime, exception);
+            }
+        });
+    }
+
+    private long endTime() {
+        return toEpochMillis(startTime, startNanos, System.nanoTime());
+    }
+
+    /**
+     * @return epoch milliseconds of a System.nanoTime() value, relative to a wall clock and nanoTime pair
+     */
+    static long toEpochMillis(long startTime, long startNanos, long nanos) {
+        return startTime + TimeUnit.NANOSECONDS.toMillis(nanos - startNanos);
+    }
+}
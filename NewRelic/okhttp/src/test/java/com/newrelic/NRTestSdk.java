@@ -0,0 +1,50 @@
+package com.newrelic;
+
+import java.util.List;
+
+/**
+ * Starts NRSdk against an NRRecordingBackend, for tests of modules outside this package.
+ */
+public final class NRTestSdk {
+
+    private final NRRecordingBackend backend = new NRRecordingBackend();
+
+    private NRTestSdk() {
+    }
+
+    /**
+     * Forgets any previous init() and initializes NRSdk against a new recording backend.
+     */
+    public static NRTestSdk init() {
+        NRSdk.reset();
+        NRTestSdk sdk = new NRTestSdk();
+        NRSdk.init(new NRConfig("token"), sdk.backend);
+        return sdk;
+    }
+
+    /**
+     * Waits for a backend call, e.g. one reported from a background thread.
+     *
+     * @param firstArg first argument of the call, e.g. the url of a request
+     * @return arguments of the first matching call, null if none was made within the timeout
+     */
+    public List<Object> await(String method, Object firstArg, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        do {
+            for (NRRecordingBackend.Call call : backend.getCalls()) {
+                if (call.method.equals(method) && !call.args.isEmpty() && firstArg.equals(call.args.get(0))) {
+                    return call.args;
+                }
+            }
+            Thread.sleep(5);
+        } while (System.currentTimeMillis() < deadline);
+        return null;
+    }
+
+    /**
+     * @return number of calls of the backend method
+     */
+    public int count(String method) {
+        return backend.count(method);
+    }
+}
@@ -0,0 +1,133 @@
+package com.newrelic.okhttp;
+
+import com.newrelic.NRTestSdk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Requests through an OkHttpClient with NRInterceptor against a MockWebServer, reported to a recording NRSdk.
+ */
+public class NRInterceptorTest {
+
+    private static final long TIMEOUT_MS = 5000;
+    private static final String PATH = "/orders";
+
+    // noticeHttpTransaction(url, httpMethod, statusCode, startTime, endTime, bytesSent, bytesReceived, responseBody)
+    private static final int STATUS_CODE = 2;
+    private static final int START_TIME = 3;
+    private static final int END_TIME = 4;
+    private static final int BYTES_SENT = 5;
+    private static final int BYTES_RECEIVED = 6;
+
+    private final MockWebServer server = new MockWebServer();
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .addInterceptor(new NRInterceptor())
+            .build();
+
+    private NRTestSdk sdk;
+
+    @Before
+    public void setUp() throws IOException {
+        sdk = NRTestSdk.init();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private Response post(String body) throws IOException {
+        Request request = new Request.Builder()
+                .url(server.url(PATH))
+                .post(RequestBody.create(MediaType.parse("text/plain"), body))
+                .build();
+        return client.newCall(request).execute();
+    }
+
+    @Test
+    public void completedRequest_isReportedWithItsBytes() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201).setBody("created"));
+
+        long before = System.currentTimeMillis();
+        Response response = post("payload");
+        assertEquals("created", response.body().string());
+        long after = System.currentTimeMillis();
+
+        List<Object> args = sdk.await("noticeHttpTransaction", server.url(PATH).toString(), TIMEOUT_MS);
+        assertNotNull(args);
+        assertEquals("POST", args.get(1));
+        assertEquals(201, args.get(STATUS_CODE));
+        assertEquals(7L, args.get(BYTES_SENT));
+        assertEquals(7L, args.get(BYTES_RECEIVED));
+
+        long startTime = (Long) args.get(START_TIME);
+        long endTime = (Long) args.get(END_TIME);
+        assertTrue(startTime >= before);
+        assertTrue(endTime >= startTime);
+        assertTrue(endTime <= after + 1);
+    }
+
+    @Test
+    public void retriedRequest_countsTheBodyOnce() throws Exception {
+        // OkHttp repeats the request, and writes its body again, after a 408
+        server.enqueue(new MockResponse().setResponseCode(408).setBody("timeout"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+
+        Response response = post("payload");
+        assertEquals("ok", response.body().string());
+        assertEquals(2, server.getRequestCount());
+
+        List<Object> args = sdk.await("noticeHttpTransaction", server.url(PATH).toString(), TIMEOUT_MS);
+        assertNotNull(args);
+        assertEquals(200, args.get(STATUS_CODE));
+        assertEquals(7L, args.get(BYTES_SENT));
+        assertEquals(2L, args.get(BYTES_RECEIVED));
+    }
+
+    @Test
+    public void responseClosedUnread_isReported() throws Exception {
+        server.enqueue(new MockResponse().setBody("unread"));
+
+        Request request = new Request.Builder().url(server.url(PATH)).build();
+        client.newCall(request).execute().close();
+
+        List<Object> args = sdk.await("noticeHttpTransaction", server.url(PATH).toString(), TIMEOUT_MS);
+        assertNotNull(args);
+        assertEquals("GET", args.get(1));
+        assertEquals(0L, args.get(BYTES_SENT));
+    }
+
+    @Test
+    public void failedRequest_isReportedAsNetworkFailure() throws Exception {
+        HttpUrl url = server.url(PATH);
+        server.shutdown();
+
+        try {
+            client.newCall(new Request.Builder().url(url).build()).execute();
+            fail("expected an IOException");
+        } catch (IOException expected) {
+            // reported below
+        }
+
+        List<Object> args = sdk.await("noticeNetworkFailure", url.toString(), TIMEOUT_MS);
+        assertNotNull(args);
+        assertTrue(args.get(4) instanceof IOException);
+    }
+}
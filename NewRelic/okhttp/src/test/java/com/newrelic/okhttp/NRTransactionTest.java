@@ -0,0 +1,67 @@
+package com.newrelic.okhttp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Byte counting bodies and time conversion of NRTransaction, without a server.
+ */
+public class NRTransactionTest {
+
+    private static final MediaType TEXT = MediaType.parse("text/plain");
+
+    private final NRTransaction transaction = new NRTransaction("https://example.com/", "POST");
+
+    @Test
+    public void toEpochMillis_addsTheElapsedNanoTime() {
+        long startNanos = 123456789L;
+        assertEquals(1000L, NRTransaction.toEpochMillis(1000L, startNanos, startNanos));
+        assertEquals(1250L, NRTransaction.toEpochMillis(1000L, startNanos, startNanos + TimeUnit.MILLISECONDS.toNanos(250)));
+        // nanoTime may be negative, only differences count
+        assertEquals(1002L, NRTransaction.toEpochMillis(1000L, -5000000L, -3000000L));
+    }
+
+    @Test
+    public void requestBody_countsEachWriteOnce() throws IOException {
+        CountingRequestBody body = new CountingRequestBody(RequestBody.create(TEXT, "payload"), transaction);
+        assertEquals(7, body.contentLength());
+
+        Buffer sink = new Buffer();
+        body.writeTo(sink);
+        assertEquals("payload", sink.readUtf8());
+        assertEquals(7, transaction.getBytesSent());
+
+        // a retry writes the body again
+        body.writeTo(new Buffer());
+        assertEquals(7, transaction.getBytesSent());
+    }
+
+    @Test
+    public void responseBody_countsBytesRead() throws IOException {
+        CountingResponseBody body = new CountingResponseBody(ResponseBody.create(TEXT, "response"), transaction);
+        assertEquals(8, body.contentLength());
+
+        assertEquals("response", body.string());
+        assertEquals(8, transaction.getBytesReceived());
+    }
+
+    @Test
+    public void responseBody_countsPartialReads() throws IOException {
+        CountingResponseBody body = new CountingResponseBody(ResponseBody.create(TEXT, "response"), transaction);
+
+        Buffer sink = new Buffer();
+        body.source().read(sink, 3);
+        body.close();
+        assertTrue(transaction.getBytesReceived() >= 3);
+        assertTrue(transaction.getBytesReceived() <= 8);
+    }
+}